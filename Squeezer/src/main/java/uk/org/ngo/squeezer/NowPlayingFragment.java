@@ -27,7 +27,9 @@ import android.content.res.ColorStateList;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -73,6 +75,7 @@ import uk.org.ngo.squeezer.itemlist.PlayerListActivity;
 import uk.org.ngo.squeezer.itemlist.PlayerViewLogic;
 import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
 import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.PlaybackClock;
 import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.PlayerState;
 import uk.org.ngo.squeezer.model.PlayerState.RepeatStatus;
@@ -83,14 +86,9 @@ import uk.org.ngo.squeezer.service.SqueezeService;
 import uk.org.ngo.squeezer.service.event.ConnectionChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.service.event.HomeMenuEvent;
-import uk.org.ngo.squeezer.service.event.MusicChanged;
-import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStatusDelta;
 import uk.org.ngo.squeezer.service.event.PlayersChanged;
-import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
 import uk.org.ngo.squeezer.service.event.RegisterSqueezeNetwork;
-import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
-import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
-import uk.org.ngo.squeezer.service.event.SongTimeChanged;
 import uk.org.ngo.squeezer.util.ImageFetcher;
 import uk.org.ngo.squeezer.widget.OnSwipeListener;
 
@@ -162,6 +160,16 @@ public class NowPlayingFragment extends Fragment {
     // Updating the seekbar
     private boolean updateSeekBar = true;
 
+    /** Advances the time display from the playback clock of the active player while it plays. */
+    private final Handler timeHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable timeUpdater = () -> {
+        PlayerState playerState = getPlayerState();
+        if (playerState != null) {
+            updateTimeDisplay(playerState);
+        }
+    };
+
     private Button volumeButton;
 
     private Button playlistButton;
@@ -306,21 +314,21 @@ public class NowPlayingFragment extends Fragment {
         if (mFullHeightLayout) {
             artistText.setOnClickListener(v1 -> {
                 if (artistItem != null) {
-                    JiveItemListActivity.show(mActivity, artistItem, artistItem.goAction);
+                    JiveItemListActivity.show(mActivity, artistItem, artistItem.getGoAction());
                 }
             });
 
             albumText.setOnClickListener(v12 -> {
                 if (albumItem != null) {
-                    JiveItemListActivity.show(mActivity, albumItem, albumItem.goAction);
+                    JiveItemListActivity.show(mActivity, albumItem, albumItem.getGoAction());
                 }
             });
 
             trackText.setOnClickListener(v13 -> {
                 CurrentPlaylistItem song = getCurrentSong();
                 if (song != null) {
-                    globalSearch.input.initialText = song.getName();
-                    JiveItemListActivity.show(mActivity, globalSearch, globalSearch.goAction);
+                    globalSearch.getInput().initialText = song.getName();
+                    JiveItemListActivity.show(mActivity, globalSearch, globalSearch.getGoAction());
                 }
             });
 
@@ -359,7 +367,7 @@ public class NowPlayingFragment extends Fragment {
                 new Preferences(mActivity).setShowRemainingTime(showRemainingTime);
                 PlayerState playerState = getPlayerState();
                 if (playerState != null) {
-                    updateTimeDisplayTo(playerState.getTrackElapsed(), playerState.getCurrentSongDuration());
+                    updateTimeDisplay(playerState);
                 }
             });
 
@@ -569,6 +577,21 @@ public class NowPlayingFragment extends Fragment {
         }
     }
 
+    /**
+     * Update the time display from the playback clock of the supplied player state, and schedule
+     * the next update for when the play position reaches the next second.
+     */
+    @UiThread
+    private void updateTimeDisplay(@NonNull PlayerState playerState) {
+        timeHandler.removeCallbacks(timeUpdater);
+        updateTimeDisplayTo(playerState.getTrackElapsed(), playerState.getCurrentSongDuration());
+
+        long delay = playerState.getPlaybackClock().millisToNextSecond(PlaybackClock.now());
+        if (delay >= 0) {
+            timeHandler.postDelayed(timeUpdater, delay);
+        }
+    }
+
     @UiThread
     private void updateTimeDisplayTo(int secondsIn, int secondsTotal) {
         if (mFullHeightLayout) {
@@ -613,7 +636,7 @@ public class NowPlayingFragment extends Fragment {
      */
     @UiThread
     private void updateSongInfo(@NonNull PlayerState playerState) {
-        updateTimeDisplayTo(playerState.getTrackElapsed(), playerState.getCurrentSongDuration());
+        updateTimeDisplay(playerState);
 
         CurrentPlaylistItem song = playerState.getCurrentSong();
         if (song == null) {
@@ -636,7 +659,7 @@ public class NowPlayingFragment extends Fragment {
                 artistText.setText(song.getArtist());
                 albumText.setText(song.getAlbum());
 
-                mService.pluginItems(song.moreAction, new IServiceItemListCallback<>() {
+                mService.pluginItems(song.getMoreAction(), new IServiceItemListCallback<>() {
                     @Override
                     public void onItemsReceived(int count, int start, Map<String, Object> parameters, List<JiveItem> items, Class<JiveItem> dataType) {
                         albumItem = findBrowseAction(items, "album_id");
@@ -671,9 +694,9 @@ public class NowPlayingFragment extends Fragment {
 
     private JiveItem findBrowseAction(List<JiveItem> items, String idParam) {
         for (JiveItem item : items) {
-            if (item.goAction != null && item.goAction.action != null &&
-                    item.goAction.action.cmd.equals(Arrays.asList("browselibrary", "items")) &&
-                    item.goAction.action.params.containsKey(idParam)) {
+            if (item.getGoAction() != null && item.getGoAction().action != null &&
+                    item.getGoAction().action.cmd.equals(Arrays.asList("browselibrary", "items")) &&
+                    item.getGoAction().action.params.containsKey(idParam)) {
                 return item;
             }
         }
@@ -731,6 +754,7 @@ public class NowPlayingFragment extends Fragment {
             mService.getEventBus().unregister(this);
             mRegisteredCallbacks = false;
         }
+        timeHandler.removeCallbacks(timeUpdater);
 
         pluginViewDelegate.resetContextMenu();
 
@@ -822,8 +846,8 @@ public class NowPlayingFragment extends Fragment {
 
         int itemId = item.getItemId();
         if (itemId == R.id.menu_item_search) {
-            globalSearch.input.initialText = "";
-            JiveItemListActivity.show(mActivity, globalSearch, globalSearch.goAction);
+            globalSearch.getInput().initialText = "";
+            JiveItemListActivity.show(mActivity, globalSearch, globalSearch.getGoAction());
             return true;
         } else if (itemId == R.id.menu_item_playlist) {
             CurrentPlaylistActivity.show(mActivity);
@@ -951,37 +975,45 @@ public class NowPlayingFragment extends Fragment {
         JiveItemListActivity.register(mActivity);
     }
 
+    /**
+     * Update the parts of the UI which reflect the changes of a status of the active player.
+     */
     @MainThread
-    public void onEventMainThread(MusicChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updateSongInfo(event.playerState);
+    public void onEventMainThread(PlayerStatusDelta event) {
+        if (!event.player.equals(mService.getActivePlayer())) {
+            return;
         }
-    }
-
-    @MainThread
-    public void onEventMainThread(PlayersChanged event) {
-        updatePlayerDropDown(mService.getPlayers(), mService.getActivePlayer());
-    }
 
-    @MainThread
-    public void onEventMainThread(PlayStatusChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updatePlayPauseIcon(event.playStatus);
+        PlayerState playerState = event.playerState;
+        if (event.changed(PlayerState.CHANGED_SONG)) {
+            updateSongInfo(playerState);
+        } else if (event.changed(PlayerState.CHANGED_SONG_TIME | PlayerState.CHANGED_SONG_DURATION | PlayerState.CHANGED_PLAY_STATUS)) {
+            updateTimeDisplay(playerState);
+        }
+        if (event.changed(PlayerState.CHANGED_PLAY_STATUS)) {
+            updatePlayPauseIcon(playerState.getPlayStatus());
+        }
+        if (event.changed(PlayerState.CHANGED_POWER)) {
+            updatePlayerMenuItems();
+        }
+        if (event.changed(PlayerState.CHANGED_REPEAT)) {
+            updateRepeatStatus(playerState.getRepeatStatus());
+        }
+        if (event.changed(PlayerState.CHANGED_SHUFFLE)) {
+            updateShuffleStatus(playerState.getShuffleStatus());
         }
     }
 
     @MainThread
-    public void onEventMainThread(PowerStatusChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updatePlayerMenuItems();
-        }
+    public void onEventMainThread(PlayersChanged event) {
+        updatePlayerDropDown(mService.getPlayers(), mService.getActivePlayer());
     }
 
     @MainThread
     public void onEventMainThread(HomeMenuEvent event) {
         globalSearch = null;
         for (JiveItem menuItem : event.menuItems) {
-            if ("globalSearch".equals(menuItem.getId()) && menuItem.goAction != null) {
+            if ("globalSearch".equals(menuItem.getId()) && menuItem.getGoAction() != null) {
                 globalSearch = menuItem;
                 break;
             }
@@ -990,25 +1022,4 @@ public class NowPlayingFragment extends Fragment {
             menuItemSearch.setVisible(globalSearch != null);
         }
     }
-
-    @MainThread
-    public void onEventMainThread(RepeatStatusChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updateRepeatStatus(event.repeatStatus);
-        }
-    }
-
-    @MainThread
-    public void onEventMainThread(ShuffleStatusChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updateShuffleStatus(event.shuffleStatus);
-        }
-    }
-
-    @MainThread
-    public void onEventMainThread(SongTimeChanged event) {
-        if (event.player.equals(mService.getActivePlayer())) {
-            updateTimeDisplayTo(event.currentPosition, event.duration);
-        }
-    }
 }
@@ -5,6 +5,8 @@ import android.content.Context;
 
 import androidx.multidex.MultiDexApplication;
 
+import uk.org.ngo.squeezer.util.PageCache;
+
 // Trick to make the app context useful available everywhere.
 // See http://stackoverflow.com/questions/987072/using-application-context-everywhere
 
@@ -24,5 +26,11 @@ public class Squeezer extends MultiDexApplication {
     public void onCreate() {
         super.onCreate();
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        PageCache.getInstance().onTrimMemory(level);
+    }
 }
 
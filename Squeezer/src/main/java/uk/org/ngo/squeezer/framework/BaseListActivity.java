@@ -24,6 +24,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +32,7 @@ import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
 import uk.org.ngo.squeezer.model.Item;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.util.ImageFetcher;
+import uk.org.ngo.squeezer.util.PageCache;
 
 
 /**
@@ -161,9 +163,21 @@ public abstract class BaseListActivity<VH extends ItemViewHolder<T>, T extends I
 
     @Override
     public void onItemsReceived(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+        maybeCachePage(count, start, parameters, items, dataType);
         super.onItemsReceived(count, start, items, dataType);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void onPageFromCache(@NonNull PageCache.Page page) {
+        onItemsReceived(page.count, page.start, page.parameters, new ArrayList<>((List<T>) page.items), (Class<T>) page.dataType);
+    }
+
+    @Override
+    public void onItemsFailed(int start, Throwable failure) {
+        super.onItemsFailed(start, failure);
+    }
+
     @Override
     public Object getClient() {
         return this;
@@ -20,17 +20,23 @@ package uk.org.ngo.squeezer.framework;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
+import android.widget.OverScroller;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Stack;
@@ -43,6 +49,7 @@ import uk.org.ngo.squeezer.service.ISqueezeService;
 import uk.org.ngo.squeezer.service.SqueezeService;
 import uk.org.ngo.squeezer.service.event.ActivePlayerChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
+import uk.org.ngo.squeezer.util.PageCache;
 import uk.org.ngo.squeezer.util.RetainFragment;
 
 /**
@@ -55,13 +62,49 @@ public abstract class ItemListActivity extends BaseActivity {
 
     private static final String TAG = ItemListActivity.class.getName();
 
+    /**
+     * Maximum number of pages ordered while the list scrolls, which have not been received yet.
+     */
+    private static final int MAX_SCROLL_ORDERS = 3;
+
     /**
      * The list is being actively scrolled by the user
      */
     private boolean mListScrolling;
 
     /**
-     * The number of items per page.
+     * Direction the list is scrolling in, 1 towards the end of the list, -1 towards the start.
+     */
+    private int mScrollDirection;
+
+    /**
+     * Adapter position of the first visible row when the current fling stops, or
+     * {@link RecyclerView#NO_POSITION} if the list isn't flung.
+     */
+    private int mFlingTarget = RecyclerView.NO_POSITION;
+
+    /**
+     * Computes how far a fling goes, the same way the list does.
+     */
+    private OverScroller mFlingPredictor;
+
+    private int mMaxFlingVelocity;
+
+    /**
+     * What the pages were last prefetched for, see {@link #prefetchPages(RecyclerView)}: the first
+     * and last visible page, the fling target, the scroll direction and the number of outstanding
+     * orders. The first page is {@link RecyclerView#NO_POSITION} if nothing has been prefetched
+     * since the list was last idle.
+     */
+    private int mPrefetchFirstPage = RecyclerView.NO_POSITION;
+    private int mPrefetchLastPage;
+    private int mPrefetchFlingTarget;
+    private int mPrefetchDirection;
+    private int mPrefetchOrders;
+
+    /**
+     * The number of items per page. Pages are the unit in which items are ordered and tracked, the
+     * service may receive them in smaller or larger chunks.
      */
     protected int mPageSize;
 
@@ -70,6 +113,13 @@ public abstract class ItemListActivity extends BaseActivity {
      */
     private final Set<Integer> mOrderedPages = new HashSet<>();
 
+    /**
+     * The end (exclusive) of each outstanding order, by the page it starts at. The response to an
+     * order may hold several pages, see {@link #onItemsOrdered(int, int)}, and all of them are in
+     * {@link #mOrderedPages} until they are received.
+     */
+    private final Map<Integer, Integer> mOrders = new HashMap<>();
+
     /**
      * The pages that have been received from the server
      */
@@ -82,6 +132,18 @@ public abstract class ItemListActivity extends BaseActivity {
      */
     private final Stack<Integer> mOrderedPagesBeforeHandshake = new Stack<>();
 
+    /**
+     * A page from the {@link PageCache} is being received, so it's not stored again. Only accessed
+     * on the UI thread.
+     */
+    private boolean mReceivingCachedPage;
+
+    /**
+     * Items of pages which are being received in chunks, by page start. A page is stored in the
+     * {@link PageCache} once all its chunks have arrived. Only accessed on the UI thread.
+     */
+    private final Map<Integer, List<Item>> mPageChunks = new HashMap<>();
+
     /**
      * Progress bar (spinning) while items are loading.
      */
@@ -128,6 +190,9 @@ public abstract class ItemListActivity extends BaseActivity {
         listView = Objects.requireNonNull(subActivityContent.findViewById(R.id.item_list),
                 "getContentView() did not return a view containing R.id.item_list");
         listView.setLayoutManager(new LinearLayoutManager(this));
+        listView.setOnFlingListener(new FlingListener());
+        mFlingPredictor = new OverScroller(this);
+        mMaxFlingVelocity = ViewConfiguration.get(this).getScaledMaximumFlingVelocity();
     }
 
     /**
@@ -209,6 +274,27 @@ public abstract class ItemListActivity extends BaseActivity {
      */
     protected abstract void orderPage(@NonNull ISqueezeService service, int start);
 
+    /**
+     * Pages received for a request are kept in the {@link PageCache}, so they are not ordered
+     * again when the list is shown again shortly after. Cached pages are not revalidated, so only
+     * lists whose items don't change while they are cached may supply an identity.
+     *
+     * @return A string which is equal for lists which order the same items from the server, or
+     *     null if the pages of this list must not be cached.
+     */
+    @Nullable
+    protected String getRequestIdentity() {
+        return null;
+    }
+
+    /**
+     * Deliver a page from the {@link PageCache}, as if it was received from the server. Lists
+     * which supply a {@link #getRequestIdentity()} must implement this.
+     */
+    @MainThread
+    protected void onPageFromCache(@NonNull PageCache.Page page) {
+    }
+
     public ArtworkListLayout getPreferredListLayout() {
         return new Preferences(this).getAlbumListLayout();
     }
@@ -235,12 +321,18 @@ public abstract class ItemListActivity extends BaseActivity {
     /**
      * Orders a page worth of data, starting at the specified position, if it has not already been
      * ordered, and if the service is connected and the handshake has completed.
+     * <p>
+     * While the list scrolls pages are only ordered by {@link #prefetchPages(RecyclerView)}.
      *
      * @param pagePosition position in the list to start the fetch.
      * @return True if the page needed to be ordered (even if the order failed), false otherwise.
      */
     public boolean maybeOrderPage(int pagePosition) {
-        if (!mListScrolling && !mReceivedPages.contains(pagePosition) && !mOrderedPages
+        return !mListScrolling && orderPageIfNeeded(pagePosition);
+    }
+
+    private boolean orderPageIfNeeded(int pagePosition) {
+        if (!mReceivedPages.contains(pagePosition) && !mOrderedPages
                 .contains(pagePosition) && !mOrderedPagesBeforeHandshake.contains(pagePosition)) {
             ISqueezeService service = getService();
 
@@ -248,10 +340,11 @@ public abstract class ItemListActivity extends BaseActivity {
             // request where it can be used in mHandshakeComplete.
             if (service == null) {
                 mOrderedPagesBeforeHandshake.push(pagePosition);
-            } else {
+            } else if (!maybeReceiveCachedPage(pagePosition)) {
                 try {
                     orderPage(service, pagePosition);
                     mOrderedPages.add(pagePosition);
+                    mOrders.putIfAbsent(pagePosition, pagePosition + mPageSize);
                 } catch (SqueezeService.HandshakeNotCompleteException e) {
                     mOrderedPagesBeforeHandshake.push(pagePosition);
                 }
@@ -262,6 +355,93 @@ public abstract class ItemListActivity extends BaseActivity {
         }
     }
 
+    /**
+     * Receive the page starting at the supplied position from the {@link PageCache}, if it's
+     * there.
+     *
+     * @return True if the whole page was received
+     */
+    private boolean maybeReceiveCachedPage(int pagePosition) {
+        String key = getPageCacheKey(pagePosition);
+        PageCache.Page page = (key != null) ? PageCache.getInstance().get(key) : null;
+        if (page == null) {
+            return false;
+        }
+
+        mReceivingCachedPage = true;
+        try {
+            onPageFromCache(page);
+        } finally {
+            mReceivingCachedPage = false;
+        }
+        return mReceivedPages.contains(pagePosition);
+    }
+
+    @Nullable
+    private String getPageCacheKey(int start) {
+        String requestIdentity = getRequestIdentity();
+        return (requestIdentity != null) ? requestIdentity + " " + start + " " + mPageSize : null;
+    }
+
+    /**
+     * Store items received from the server in the {@link PageCache}, if the pages of this list are
+     * cached. Items may hold several pages, or a chunk of a page, so they are stored by page.
+     * <p>
+     * Subclasses should call this method with the parameters of the response when they receive
+     * items from the server. The items are stored on the UI thread.
+     */
+    protected <T extends Item> void maybeCachePage(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+        runOnUiThread(() -> cachePage(count, start, parameters, items, dataType));
+    }
+
+    @MainThread
+    private <T extends Item> void cachePage(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+        if (mReceivingCachedPage || items.isEmpty() || getRequestIdentity() == null) {
+            return;
+        }
+
+        int end = Math.min(start + items.size(), count);
+        for (int pageStart = (start / mPageSize) * mPageSize; pageStart < end; pageStart += mPageSize) {
+            int pageEnd = Math.min(pageStart + mPageSize, count);
+            int from = Math.max(start, pageStart);
+            int to = Math.min(end, pageEnd);
+
+            // Chunks of a page are collected until the page is complete
+            List<Item> pageItems;
+            if (from == pageStart) {
+                pageItems = new ArrayList<>(to - from);
+            } else {
+                pageItems = mPageChunks.remove(pageStart);
+                if (pageItems == null || pageStart + pageItems.size() != from) {
+                    continue;
+                }
+            }
+            pageItems.addAll(items.subList(from - start, to - start));
+
+            if (to < pageEnd) {
+                mPageChunks.put(pageStart, pageItems);
+            } else {
+                @SuppressWarnings("unchecked")
+                List<T> page = (List<T>) (List<?>) pageItems;
+                PageCache.getInstance().put(getPageCacheKey(pageStart), new PageCache.Page(count, pageStart, parameters, page, dataType));
+            }
+        }
+    }
+
+    /**
+     * Empties the variables that track which pages have been requested, drops the cached pages of
+     * this list, and orders page 0 from the server.
+     * <p>
+     * Call this instead of {@link #clearAndReOrderItems()} when the items are known to have changed.
+     */
+    public void reloadItems() {
+        String requestIdentity = getRequestIdentity();
+        if (requestIdentity != null) {
+            PageCache.getInstance().removeRequest(requestIdentity);
+        }
+        clearAndReOrderItems();
+    }
+
     /**
      * Update the UI with the player change
      */
@@ -313,13 +493,155 @@ public abstract class ItemListActivity extends BaseActivity {
         }
     }
 
+    /**
+     * Orders the pages the list is about to show while it scrolls, and cancels the orders for the
+     * pages it has scrolled past.
+     * <p>
+     * If the list is flung the pages it is predicted to stop at are ordered first, otherwise the
+     * visible pages and the next page in the scroll direction. At most {@link #MAX_SCROLL_ORDERS}
+     * pages are outstanding, so the pages the user will see aren't queued behind pages they won't.
+     * <p>
+     * This is called for every frame while the list scrolls, so the wanted pages are only
+     * recomputed when the visible pages, the fling target, the scroll direction or the number of
+     * outstanding orders changed.
+     *
+     * @param listView The scrolling listview.
+     */
+    private void prefetchPages(RecyclerView listView) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+        int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+        int lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition();
+        if (firstVisibleItemPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int firstPage = firstVisibleItemPosition / mPageSize;
+        int lastPage = lastVisibleItemPosition / mPageSize;
+        int orders = mOrders.size();
+        if (firstPage == mPrefetchFirstPage && lastPage == mPrefetchLastPage && mFlingTarget == mPrefetchFlingTarget
+                && mScrollDirection == mPrefetchDirection && orders == mPrefetchOrders) {
+            return;
+        }
+
+        // The wanted pages in the order they are needed
+        List<Integer> wantedPages = new ArrayList<>();
+        int visibleCount = lastVisibleItemPosition - firstVisibleItemPosition + 1;
+        if (mFlingTarget != RecyclerView.NO_POSITION) {
+            addPages(wantedPages, mFlingTarget, mFlingTarget + visibleCount);
+        }
+        addPages(wantedPages, firstVisibleItemPosition, lastVisibleItemPosition + 1);
+        if (mScrollDirection > 0) {
+            addPages(wantedPages, lastVisibleItemPosition + 1, lastVisibleItemPosition + 1 + mPageSize);
+        } else if (mScrollDirection < 0) {
+            addPages(wantedPages, firstVisibleItemPosition - mPageSize, firstVisibleItemPosition);
+        }
+
+        for (Map.Entry<Integer, Integer> order : new ArrayList<>(mOrders.entrySet())) {
+            if (!containsPage(wantedPages, order.getKey(), order.getValue())) {
+                cancelOrder(order.getKey());
+            }
+        }
+
+        int itemCount = layoutManager.getItemCount();
+        for (int page : wantedPages) {
+            if (mOrders.size() >= MAX_SCROLL_ORDERS) {
+                break;
+            }
+            if (page < itemCount) {
+                orderPageIfNeeded(page);
+            }
+        }
+
+        mPrefetchFirstPage = firstPage;
+        mPrefetchLastPage = lastPage;
+        mPrefetchFlingTarget = mFlingTarget;
+        mPrefetchDirection = mScrollDirection;
+        mPrefetchOrders = mOrders.size();
+    }
+
+    /**
+     * @return True if one of the supplied pages starts from start (inclusive) to end (exclusive)
+     */
+    private static boolean containsPage(List<Integer> pages, int start, int end) {
+        for (int page : pages) {
+            if (page >= start && page < end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the pages containing the positions from start (inclusive) to end (exclusive), which are
+     * not in the list already.
+     */
+    private void addPages(List<Integer> pages, int start, int end) {
+        for (int page = (Math.max(start, 0) / mPageSize) * mPageSize; page < end; page += mPageSize) {
+            if (!pages.contains(page)) {
+                pages.add(page);
+            }
+        }
+    }
+
+    /**
+     * Cancel the order starting at the supplied position, so its items are discarded if they
+     * arrive, and its pages are ordered again when they are shown.
+     */
+    private void cancelOrder(int pagePosition) {
+        int end = forgetOrder(pagePosition);
+        ISqueezeService service = getService();
+        if (service != null) {
+            service.cancelItemListRequests(this, pagePosition, end);
+        }
+    }
+
+    /**
+     * Forget the order starting at the supplied position, and the pages it covers which have not
+     * been received.
+     *
+     * @return The end (exclusive) of the order
+     */
+    private int forgetOrder(int pagePosition) {
+        Integer end = mOrders.remove(pagePosition);
+        if (end == null) {
+            end = pagePosition + mPageSize;
+        }
+        for (int page = pagePosition; page < end; page += mPageSize) {
+            mOrderedPages.remove(page);
+        }
+        return end;
+    }
+
+    /**
+     * Called when the items starting at the supplied position are requested from the server. The
+     * response may hold more items than the page which was ordered, so the following pages it
+     * covers are recorded as ordered, and are not ordered again.
+     *
+     * @param start Position of the first requested item
+     * @param count Number of requested items
+     */
+    public void onItemsOrdered(int start, int count) {
+        if (start % mPageSize != 0 || count <= mPageSize) {
+            return;
+        }
+        int end = start + count;
+        mOrders.put(start, end);
+        for (int page = start + mPageSize; page < end; page += mPageSize) {
+            if (!mReceivedPages.contains(page)) {
+                mOrderedPages.add(page);
+            }
+        }
+    }
+
     /**
      * Tracks items that have been received from the server.
      * <p>
      * Subclasses <b>must</b> call this method when receiving data from the server to ensure that
      * internal bookkeeping about pages that have/have not been ordered is kept consistent.
      * <p>
-     * This will call back to {@link #updateAdapter(int, int, List, Class)} on the UI thread
+     * The pages are registered as received, and {@link #updateAdapter(int, int, List, Class)} is
+     * called, on the UI thread, so the bookkeeping of ordered and received pages is only accessed
+     * there.
      *
      * @param count The total number of items known by the server.
      * @param start The start position of this update.
@@ -330,24 +652,62 @@ public abstract class ItemListActivity extends BaseActivity {
         int size = items.size();
         Log.d(TAG, "onItemsReceived(" + count + ", " + start + ", " + size + ")");
 
-        // If this doesn't add any items, then don't register the page as received
-        if (start < count && size != 0) {
-            // Because we might receive a page in chunks, we test if this is the end of a page
-            // before we register the page as received.
-            if (((start + size) % mPageSize == 0) || (start + size == count)) {
-                // Add this page of data to mReceivedPages and remove from mOrderedPages.
-                int pageStart = (start / mPageSize) * mPageSize;
-                mReceivedPages.add(pageStart);
-                mOrderedPages.remove(pageStart);
+        runOnUiThread(() -> {
+            // If this doesn't add any items, then don't register the page as received
+            if (start < count && size != 0) {
+                // Because we might receive a page in chunks, or several pages at once, we register
+                // each page as received with the chunk that contains its end.
+                int end = start + size;
+                for (int pageStart = (start / mPageSize) * mPageSize; pageStart < end; pageStart += mPageSize) {
+                    if (pageStart + mPageSize <= end || end == count) {
+                        // Add this page of data to mReceivedPages and remove from mOrderedPages.
+                        mReceivedPages.add(pageStart);
+                        mOrderedPages.remove(pageStart);
+                    }
+                }
+                mOrders.entrySet().removeIf(order -> !hasOrderedPage(order.getKey(), order.getValue()));
             }
-        }
 
-        runOnUiThread(() -> {
             showContent();
             updateAdapter(count, start, items, dataType);
         });
     }
 
+    /**
+     * @return True if a page from start (inclusive) to end (exclusive) is ordered and not received
+     */
+    private boolean hasOrderedPage(int start, int end) {
+        for (int page = start; page < end; page += mPageSize) {
+            if (mOrderedPages.contains(page)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget the order containing start, so its pages are ordered again when they are visible.
+     * <p>
+     * Subclasses <b>must</b> call this method if a request for items fails.
+     *
+     * @param start The start position of the failed request.
+     * @param failure The reason the request failed.
+     */
+    @CallSuper
+    protected void onItemsFailed(int start, Throwable failure) {
+        Log.w(TAG, "onItemsFailed(" + start + "): " + failure);
+        runOnUiThread(() -> {
+            int orderStart = (start / mPageSize) * mPageSize;
+            for (Map.Entry<Integer, Integer> order : mOrders.entrySet()) {
+                if (start >= order.getKey() && start < order.getValue()) {
+                    orderStart = order.getKey();
+                    break;
+                }
+            }
+            forgetOrder(orderStart);
+        });
+    }
+
     /**
      * Empties the variables that track which pages have been requested, and orders page 0.
      */
@@ -363,7 +723,10 @@ public abstract class ItemListActivity extends BaseActivity {
     public void clearItems() {
         mOrderedPagesBeforeHandshake.clear();
         mOrderedPages.clear();
+        mOrders.clear();
         mReceivedPages.clear();
+        mPageChunks.clear();
+        mPrefetchFirstPage = RecyclerView.NO_POSITION;
         clearItemAdapter();
     }
 
@@ -372,12 +735,14 @@ public abstract class ItemListActivity extends BaseActivity {
      */
     private void cancelOrders() {
         mOrderedPages.clear();
+        mOrders.clear();
     }
 
     /**
      * Tracks scrolling activity.
      * <p>
-     * When the list is idle, new pages of data are fetched from the server.
+     * While the list scrolls, the pages it is about to show are prefetched. When the list is idle,
+     * the visible pages are fetched from the server.
      */
     protected class ScrollListener extends RecyclerView.OnScrollListener {
 
@@ -392,16 +757,60 @@ public abstract class ItemListActivity extends BaseActivity {
             switch (scrollState) {
                 case RecyclerView.SCROLL_STATE_IDLE:
                     mListScrolling = false;
+                    mScrollDirection = 0;
+                    mFlingTarget = RecyclerView.NO_POSITION;
+                    mPrefetchFirstPage = RecyclerView.NO_POSITION;
                     maybeOrderVisiblePages(listView);
                     break;
 
-                case RecyclerView.SCROLL_STATE_SETTLING:
                 case RecyclerView.SCROLL_STATE_DRAGGING:
+                    // The user caught the list, so a fling in progress won't get where it was going
+                    mFlingTarget = RecyclerView.NO_POSITION;
+                case RecyclerView.SCROLL_STATE_SETTLING:
                     mListScrolling = true;
                     break;
             }
 
             mPrevScrollState = scrollState;
         }
+
+        @Override
+        public void onScrolled(@NonNull RecyclerView listView, int dx, int dy) {
+            if (mListScrolling && dy != 0) {
+                mScrollDirection = Integer.signum(dy);
+                prefetchPages(listView);
+            }
+        }
+    }
+
+    /**
+     * Predicts where the list stops when it's flung, and orders the pages it will show there.
+     */
+    private class FlingListener extends RecyclerView.OnFlingListener {
+
+        @Override
+        public boolean onFling(int velocityX, int velocityY) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+            int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+            int lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition();
+            if (firstVisibleItemPosition == RecyclerView.NO_POSITION || listView.getHeight() == 0) {
+                return false;
+            }
+
+            // The list clamps the velocity after asking us
+            int velocity = Math.max(-mMaxFlingVelocity, Math.min(velocityY, mMaxFlingVelocity));
+            mFlingPredictor.fling(0, 0, 0, velocity, 0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            int distance = mFlingPredictor.getFinalY();
+            mFlingPredictor.forceFinished(true);
+
+            float itemsPerPixel = (float) (lastVisibleItemPosition - firstVisibleItemPosition + 1) / listView.getHeight();
+            int lastPosition = layoutManager.getItemCount() - 1;
+            mFlingTarget = Math.max(0, Math.min(firstVisibleItemPosition + Math.round(distance * itemsPerPixel), lastPosition));
+            mScrollDirection = Integer.signum(velocity);
+            prefetchPages(listView);
+
+            // Let the list do the fling
+            return false;
+        }
     }
 }
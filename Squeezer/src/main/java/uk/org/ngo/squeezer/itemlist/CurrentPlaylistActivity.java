@@ -240,9 +240,9 @@ public class CurrentPlaylistActivity extends JiveItemListActivity implements Pla
                 count--;
             } else {
                 playlistItems.add(item);
-                if (item.moreAction == null) {
-                    item.moreAction = item.goAction;
-                    item.goAction = null;
+                if (item.getMoreAction() == null) {
+                    item.setMoreAction(item.getGoAction());
+                    item.setGoAction(null);
                 }
             }
         }
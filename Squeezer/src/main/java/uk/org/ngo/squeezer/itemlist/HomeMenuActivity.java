@@ -64,7 +64,7 @@ public class HomeMenuActivity extends JiveItemListActivity {
 
     public void onEvent(HomeMenuEvent event) {
         runOnUiThread(() -> {
-            if (parent.window == null) {
+            if (parent.getWindow() == null) {
                 applyWindowStyle(Window.WindowStyle.HOME_MENU);
             }
             if (parent != JiveItem.HOME && window.text == null) {
@@ -22,5 +22,30 @@ import uk.org.ngo.squeezer.service.ServiceCallback;
 
 public interface IServiceItemListCallback<T> extends ServiceCallback {
     void onItemsReceived(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType);
+
+    /**
+     * Called when items are requested for this callback, before the request is sent. The server
+     * is asked for count items, which may be more or less than the page size the request was
+     * made with.
+     */
+    default void onItemsOrdered(int start, int count) {
+    }
+
+    /**
+     * Called if no response was received for the request for items starting at start, f.e.
+     * because the request timed out or the connection was re-established.
+     */
+    default void onItemsFailed(int start, Throwable failure) {
+    }
+
+    /**
+     * When the entire list is requested, the items after the first response are requested in
+     * several ranges at the same time.
+     *
+     * @return False to receive each range as soon as it arrives, instead of in order
+     */
+    default boolean needsOrderedItems() {
+        return true;
+    }
 }
 
@@ -51,6 +51,7 @@ import com.google.android.material.textfield.TextInputLayout;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 
 import uk.org.ngo.squeezer.NowPlayingActivity;
 import uk.org.ngo.squeezer.Preferences;
@@ -63,7 +64,9 @@ import uk.org.ngo.squeezer.framework.ItemViewHolder;
 import uk.org.ngo.squeezer.framework.ViewParamItemView;
 import uk.org.ngo.squeezer.itemlist.dialog.ArtworkListLayout;
 import uk.org.ngo.squeezer.model.Action;
+import uk.org.ngo.squeezer.model.Item;
 import uk.org.ngo.squeezer.model.JiveItem;
+import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.Window;
 import uk.org.ngo.squeezer.service.ISqueezeService;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
@@ -125,8 +128,8 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
         if (savedInstanceState != null && savedInstanceState.containsKey("window")) {
             applyWindow(savedInstanceState.getParcelable("window"));
         } else {
-            if (parent != null && parent.window != null) {
-                applyWindow(parent.window);
+            if (parent != null && parent.getWindow() != null) {
+                applyWindow(parent.getWindow());
             } else if (parent != null && "playlist".equals(parent.getType())) {
                 // special case of playlist - override server based windowStyle to play_list
                 applyWindowStyle(Window.WindowStyle.PLAY_LIST);
@@ -157,9 +160,9 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
             }
             inputText.setInputType(inputType);
             inputButton.setIconResource(inputImage);
-            inputTextLayout.setHint(parent.input.title);
-            inputText.setText(parent.input.initialText);
-            parent.inputValue = parent.input.initialText;
+            inputTextLayout.setHint(parent.getInput().title);
+            inputText.setText(parent.getInput().initialText);
+            parent.inputValue = parent.getInput().initialText;
 
             inputText.setOnKeyListener((v, keyCode, event) -> {
                 if ((event.getAction() == KeyEvent.ACTION_DOWN)
@@ -323,11 +326,37 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
         }
     }
 
+    /**
+     * Only library menus are cached, as they don't change until the library is scanned, see
+     * {@link uk.org.ngo.squeezer.util.PageCache}. Other menus, like favorites, playlists and
+     * apps, can change at any time.
+     */
+    @Override
+    protected String getRequestIdentity() {
+        ISqueezeService service = getService();
+        if (service == null || parent == null || action == null || (parent.hasInput() && !parent.isInputReady())) {
+            return null;
+        }
+        if (action.action.cmd.isEmpty() || !"browselibrary".equals(action.action.cmd.get(0))) {
+            return null;
+        }
+        Player player = service.getActivePlayer();
+        return (player != null ? player.getId() : "") + " " + action.action.cmd + " " + new TreeMap<>(action.action.params(parent.inputValue));
+    }
+
+    @Override
+    protected <T extends Item> void maybeCachePage(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+        // Errors of the content source are not cached, so they are retried
+        if (!parameters.containsKey("networkerror")) {
+            super.maybeCachePage(count, start, parameters, items, dataType);
+        }
+    }
+
     public void onEventMainThread(HandshakeComplete event) {
         super.onEventMainThread(event);
         if (parent != null && parent.hasSubItems()) {
             updateHeader(parent);
-            getItemAdapter().update(parent.subItems.size(), 0, parent.subItems);
+            getItemAdapter().update(parent.getSubItems().size(), 0, parent.getSubItems());
         }
     }
 
@@ -438,7 +467,7 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
                     finish();
                     break;
                 case refresh:
-                    clearAndReOrderItems();
+                    reloadItems();
                     break;
                 case parent:
                 case refreshOrigin:
@@ -476,11 +505,11 @@ public class JiveItemListActivity extends BaseListActivity<ItemViewHolder<JiveIt
                 if (FINISH.equals(data.getAction())) {
                     finish();
                 } else if (RELOAD.equals(data.getAction())) {
-                    clearAndReOrderItems();
+                    reloadItems();
                 } else if (WINDOW.equals(data.getAction())) {
                     String windowId = data.getStringExtra(WINDOW_EXTRA);
                     if (!(windowId.equals(parent.getId()) ||
-                            (parent.window != null && windowId.equals(parent.window.windowId)) ||
+                            (parent.getWindow() != null && windowId.equals(parent.getWindow().windowId)) ||
                             JiveItem.HOME.getId().equals(parent.getId()))) {
                         setResult(Activity.RESULT_OK, new Intent(WINDOW).putExtra(WINDOW_EXTRA, windowId));
                         finish();
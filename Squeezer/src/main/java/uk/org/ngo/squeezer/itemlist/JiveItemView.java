@@ -222,19 +222,19 @@ public class JiveItemView extends ViewParamItemView<JiveItem> {
     }
 
     public void onItemSelected() {
-        Action.JsonAction action = (item.goAction != null && item.goAction.action != null) ? item.goAction.action : null;
+        Action.JsonAction action = (item.getGoAction() != null && item.getGoAction().action != null) ? item.getGoAction().action : null;
         Action.NextWindow nextWindow = (action != null ? action.nextWindow : item.nextWindow);
         if (item.checkbox != null) {
             item.checkbox = !item.checkbox;
-            Action checkboxAction = item.checkboxActions.get(item.checkbox);
+            Action checkboxAction = item.getCheckboxAction(item.checkbox);
             if (checkboxAction != null) {
                 getActivity().action(item, checkboxAction);
             }
             contextMenuCheckbox.setChecked(item.checkbox);
         } else if (nextWindow != null && !item.hasInput()) {
-            getActivity().action(item, item.goAction);
+            getActivity().action(item, item.getGoAction());
         } else {
-            if (item.goAction != null)
+            if (item.getGoAction() != null)
                 logicDelegate.execGoAction(this, item, 0);
             else if (item.hasSubItems())
                 JiveItemListActivity.show(getActivity(), item);
@@ -67,27 +67,27 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
 
     void execGoAction(ViewParamItemView<JiveItem> viewHolder, JiveItem item, int alreadyPopped) {
         if (item.showBigArtwork) {
-            ArtworkDialog.show(activity, item.goAction);
-        } else if (item.goAction.isSlideShow()) {
-            GalleryActivity.show(activity, item.goAction);
-        } else if (item.goAction.isTypeSlideShow()) {
-            SlideShow.show(activity, item.goAction);
-        } else if (item.goAction.isContextMenu()) {
-            showContextMenu(viewHolder, item, item.goAction);
-        } else if (item.doAction) {
+            ArtworkDialog.show(activity, item.getGoAction());
+        } else if (item.getGoAction().isSlideShow()) {
+            GalleryActivity.show(activity, item.getGoAction());
+        } else if (item.getGoAction().isTypeSlideShow()) {
+            SlideShow.show(activity, item.getGoAction());
+        } else if (item.getGoAction().isContextMenu()) {
+            showContextMenu(viewHolder, item, item.getGoAction());
+        } else if (item.isDoAction()) {
             if (item.hasInput()) {
                 if (item.hasChoices()) {
                     ChoicesDialog.show(activity, item, alreadyPopped);
-                } else if ("time".equals(item.input.inputStyle)) {
+                } else if ("time".equals(item.getInput().inputStyle)) {
                     InputTimeDialog.show(activity, item, alreadyPopped);
                 } else {
                     InputTextDialog.show(activity, item, alreadyPopped);
                 }
             } else {
-                activity.action(item, item.goAction, alreadyPopped);
+                activity.action(item, item.getGoAction(), alreadyPopped);
             }
         } else {
-            JiveItemListActivity.show(activity, item, item.goAction);
+            JiveItemListActivity.show(activity, item, item.getGoAction());
         }
     }
 
@@ -98,8 +98,8 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
     private ViewParamItemView<JiveItem> contextMenuViewHolder;
 
     public void showContextMenu(ViewParamItemView<JiveItem> viewHolder, JiveItem item) {
-        if (item.moreAction != null) {
-            showContextMenu(viewHolder, item, item.moreAction);
+        if (item.getMoreAction() != null) {
+            showContextMenu(viewHolder, item, item.getMoreAction());
         } else {
             showStandardContextMenu(viewHolder.contextMenuButtonHolder, item);
         }
@@ -116,16 +116,16 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
         contextPopup = new PopupMenu(activity, v);
         Menu menu = contextPopup.getMenu();
 
-        if (item.playAction != null) {
+        if (item.getPlayAction() != null) {
             menu.add(Menu.NONE, R.id.play_now, Menu.NONE, R.string.PLAY_NOW);
         }
-        if (item.addAction != null) {
+        if (item.getAddAction() != null) {
             menu.add(Menu.NONE, R.id.add_to_playlist, Menu.NONE, R.string.ADD_TO_END);
         }
-        if (item.insertAction != null) {
+        if (item.getInsertAction() != null) {
             menu.add(Menu.NONE, R.id.play_next, Menu.NONE, R.string.PLAY_NEXT);
         }
-        if (item.moreAction != null) {
+        if (item.getMoreAction() != null) {
             menu.add(Menu.NONE, R.id.more, Menu.NONE, R.string.MORE);
         }
 
@@ -137,16 +137,16 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
     private boolean doStandardItemContext(MenuItem menuItem, JiveItem item) {
         switch (menuItem.getItemId()) {
             case R.id.play_now:
-                activity.action(item, item.playAction);
+                activity.action(item, item.getPlayAction());
                 return true;
             case R.id.add_to_playlist:
-                activity.action(item, item.addAction);
+                activity.action(item, item.getAddAction());
                 return true;
             case R.id.play_next:
-                activity.action(item, item.insertAction);
+                activity.action(item, item.getInsertAction());
                 return true;
             case R.id.more:
-                JiveItemListActivity.show(activity, item, item.moreAction);
+                JiveItemListActivity.show(activity, item, item.getMoreAction());
                 return true;
         }
         return false;
@@ -167,7 +167,7 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
 
         final int offset = index;
         for (JiveItem jiveItem : items) {
-            menu.add(Menu.NONE, index++, Menu.NONE, jiveItem.getName()).setEnabled(jiveItem.goAction != null);
+            menu.add(Menu.NONE, index++, Menu.NONE, jiveItem.getName()).setEnabled(jiveItem.getGoAction() != null);
         }
 
         contextPopup.setOnMenuItemClickListener(menuItem -> {
@@ -192,7 +192,7 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
         // TODO: Maybe make this ignore work for all
         //  folders. See JiveItem.randomPlayFolderCommand()
         if ((contextMenuItem == null) ||
-                !(contextMenuItem.moreAction.action.cmd.contains("folderinfo")) ||
+                !(contextMenuItem.getMoreAction().action.cmd.contains("folderinfo")) ||
                 (contextMenuItem.randomPlayFolderCommand() == null)) {
             return false;
         }
@@ -200,9 +200,9 @@ public class JiveItemViewLogic implements IServiceItemListCallback<JiveItem>, Po
     }
 
     private void doItemContext(ViewParamItemView<JiveItem> viewHolder, JiveItem item) {
-        Action.NextWindow nextWindow = (item.goAction != null ? item.goAction.action.nextWindow : item.nextWindow);
+        Action.NextWindow nextWindow = (item.getGoAction() != null ? item.getGoAction().action.nextWindow : item.nextWindow);
         if (nextWindow != null) {
-            activity.action(item, item.goAction, contextStack);
+            activity.action(item, item.getGoAction(), contextStack);
         } else {
             execGoAction(viewHolder, item, contextStack);
         }
@@ -38,7 +38,7 @@ public class SliderView extends ItemViewHolder<JiveItem> {
     public void bindView(JiveItem item) {
         super.bindView(item);
         com.google.android.material.slider.Slider seekBar = itemView.findViewById(R.id.slider);
-        final Slider slider = item.slider;
+        final Slider slider = item.getSlider();
         seekBar.setValue(slider.initial);
         seekBar.setValueFrom(slider.min);
         seekBar.setValueTo(slider.max);
@@ -64,9 +64,9 @@ public class SliderView extends ItemViewHolder<JiveItem> {
 
             @Override
             public void onStopTrackingTouch(@NonNull com.google.android.material.slider.Slider seekBar) {
-                if (item.goAction != null) {
+                if (item.getGoAction() != null) {
                     item.inputValue = String.valueOf((int)seekBar.getValue());
-                    getActivity().action(item, item.goAction);
+                    getActivity().action(item, item.getGoAction());
                 }
             }
         });
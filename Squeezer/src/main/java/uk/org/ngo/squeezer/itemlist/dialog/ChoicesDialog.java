@@ -41,7 +41,7 @@ public class ChoicesDialog extends BaseChoicesDialog {
 
     @Override
     protected void onSelectOption(int checkedId) {
-        activity.action(item.goAction.choices[checkedId], alreadyPopped);
+        activity.action(item.getGoAction().choices[checkedId], alreadyPopped);
     }
 
     /**
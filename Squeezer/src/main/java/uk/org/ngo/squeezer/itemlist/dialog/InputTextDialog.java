@@ -41,8 +41,8 @@ public class InputTextDialog extends BaseEditTextDialog {
         Dialog dialog = super.onCreateDialog(savedInstanceState);
         dialog.setTitle(item.getName());
         editText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
-        editTextLayout.setHint(item.input.title);
-        editText.setText(item.input.initialText);
+        editTextLayout.setHint(item.getInput().title);
+        editText.setText(item.getInput().initialText);
 
         return dialog;
     }
@@ -50,7 +50,7 @@ public class InputTextDialog extends BaseEditTextDialog {
     @Override
     protected boolean commit(String inputString) {
         item.inputValue = inputString;
-        activity.action(item, item.goAction, alreadyPopped);
+        activity.action(item, item.getGoAction(), alreadyPopped);
         return true;
     }
 
@@ -16,7 +16,7 @@ public class InputTimeDialog {
         int hour;
         int minute;
         try {
-            int tod = Integer.parseInt(item.input.initialText);
+            int tod = Integer.parseInt(item.getInput().initialText);
             hour = tod / 3600;
             minute = (tod / 60) % 60;
         } catch (NumberFormatException nfe) {
@@ -37,7 +37,7 @@ public class InputTimeDialog {
         picker.addOnPositiveButtonClickListener(view -> {
             preferences.setTimeInputMode(picker.getInputMode());
             item.inputValue = String.valueOf((picker.getHour() * 60 + picker.getMinute()) * 60);
-            activity.action(item, item.goAction, alreadyPopped);
+            activity.action(item, item.getGoAction(), alreadyPopped);
         });
         picker.show(activity.getSupportFragmentManager(), InputTimeDialog.class.getSimpleName());
     }
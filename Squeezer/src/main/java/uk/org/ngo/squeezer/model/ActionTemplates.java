@@ -0,0 +1,144 @@
+package uk.org.ngo.squeezer.model;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.Util;
+
+/**
+ * The actions of the base record of a page, prepared once and shared by all items of the page.
+ * The list handler creates them once for each response, and passes them to the items it creates,
+ * see {@link ItemFactory#create(Map, ActionTemplates)}.
+ * <p>
+ * Most items of a page only differ from the base actions in the parameters which the base action
+ * refers to with "itemsParams", f.e. the album_id. An item keeps a reference to the shared
+ * templates, and its own parameters in its record, and an {@link Action} is only built from them
+ * when the item's action is requested.
+ */
+public final class ActionTemplates {
+    private final Map<String, Object> base;
+    private final Action.NextWindow nextWindow;
+    private final Map<String, Object> baseActions;
+
+    /** Templates by action name, or null if the base record has no such action. Guarded by this */
+    private final Map<String, Template> templates = new HashMap<>();
+
+    public ActionTemplates(@NonNull Map<String, Object> base) {
+        this.base = base;
+        nextWindow = Action.NextWindow.fromString(Util.getString(base, "nextWindow"));
+        baseActions = Util.getRecord(base, "actions");
+    }
+
+    Map<String, Object> base() {
+        return base;
+    }
+
+    /**
+     * @return The next window of the base record, or null
+     */
+    Action.NextWindow nextWindow() {
+        return nextWindow;
+    }
+
+    /**
+     * @return The template for the supplied base action, or null if the base record doesn't
+     *     have it.
+     */
+    synchronized Template get(String actionName) {
+        if (baseActions == null) {
+            return null;
+        }
+        if (templates.containsKey(actionName)) {
+            return templates.get(actionName);
+        }
+        Map<String, Object> actionRecord = Util.getRecord(baseActions, actionName);
+        Template template = (actionRecord != null ? new Template(actionRecord) : null);
+        templates.put(actionName, template);
+        return template;
+    }
+
+    /**
+     * An action record with its fields extracted, so actions can be built without reading it
+     * again.
+     */
+    static final class Template {
+        /** Name of the item field which holds the parameters for this action, or null */
+        final String itemsParams;
+        private final JsonTemplate action;
+        private final JsonTemplate[] choices;
+
+        @SuppressWarnings("unchecked")
+        Template(Map<String, Object> actionRecord) {
+            itemsParams = Util.getString(actionRecord, "itemsParams");
+            Object[] choiceRecords = (Object[]) actionRecord.get("choices");
+            if (choiceRecords != null) {
+                action = null;
+                choices = new JsonTemplate[choiceRecords.length];
+                for (int i = 0; i < choiceRecords.length; i++) {
+                    choices[i] = new JsonTemplate((Map<String, Object>) choiceRecords[i]);
+                }
+            } else {
+                action = new JsonTemplate(actionRecord);
+                choices = null;
+            }
+        }
+
+        /**
+         * Build an action from this template.
+         *
+         * @param itemNextWindow Next window of the item, used if the action doesn't have one
+         * @param baseNextWindow Next window of the base record, used if neither the action nor
+         *     the item have one
+         * @param itemParams Parameters of the item, which are added to the parameters of the
+         *     action, or null
+         */
+        Action build(Action.NextWindow itemNextWindow, Action.NextWindow baseNextWindow, Map<String, Object> itemParams) {
+            Action actionHolder = new Action();
+            if (choices != null) {
+                actionHolder.choices = new Action.JsonAction[choices.length];
+                for (int i = 0; i < choices.length; i++) {
+                    actionHolder.choices[i] = choices[i].build(itemNextWindow, baseNextWindow, itemParams);
+                }
+            } else {
+                actionHolder.action = action.build(itemNextWindow, baseNextWindow, itemParams);
+            }
+            return actionHolder;
+        }
+    }
+
+    private static final class JsonTemplate {
+        private final Action.NextWindow nextWindow;
+        private final String[] cmd;
+        private final Map<String, Object> params;
+        private final Action.ActionWindow window;
+        private final boolean isContextMenu;
+
+        private JsonTemplate(Map<String, Object> actionRecord) {
+            nextWindow = Action.NextWindow.fromString(Util.getString(actionRecord, "nextWindow"));
+            cmd = Util.getStringArray(actionRecord, "cmd");
+            params = Util.getRecord(actionRecord, "params");
+            Map<String, Object> windowRecord = Util.getRecord(actionRecord, "window");
+            window = (windowRecord != null) ? new Action.ActionWindow(Util.getInt(windowRecord, "isContextMenu") != 0) : null;
+            // LMS may send isContextMenu in the itemParams, but this is ignored by squeezeplay, so we must do the same.
+            isContextMenu = (params != null && params.containsKey("isContextMenu")) || (window != null && window.isContextMenu);
+        }
+
+        private Action.JsonAction build(Action.NextWindow itemNextWindow, Action.NextWindow baseNextWindow, Map<String, Object> itemParams) {
+            Action.JsonAction action = new Action.JsonAction();
+            action.nextWindow = (nextWindow != null) ? nextWindow : (itemNextWindow != null) ? itemNextWindow : baseNextWindow;
+            action.cmd(cmd);
+            if (params != null) {
+                action.params(params);
+            }
+            if (itemParams != null) {
+                action.params(itemParams);
+            }
+            action.param("useContextMenu", "1");
+            action.window = window;
+            action.isContextMenu = isContextMenu;
+            return action;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package uk.org.ngo.squeezer.model;
 
 import android.os.Parcel;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.Map;
 
@@ -47,7 +48,11 @@ public class CurrentPlaylistItem extends JiveItem {
     }
 
     public CurrentPlaylistItem(Map<String, Object> record) {
-        super(record);
+        this(record, null);
+    }
+
+    public CurrentPlaylistItem(Map<String, Object> record, @Nullable ActionTemplates templates) {
+        super(record, templates);
         track = getStringOrEmpty(record, "track");
         artist = getStringOrEmpty(record, "artist");
         album = getStringOrEmpty(record, "album");
@@ -42,10 +42,10 @@ public class CustomJiveItemHandling {
     public boolean isShortcutable(JiveItem item) {
         //  TODO add better check for fitting items
         //  TODO "All titles" is a name that comes up in several occations and will then not be updated
-        if ((item.nextWindow != null) || (item.goAction == null)) {
+        if ((item.nextWindow != null) || (item.getGoAction() == null)) {
             return false;
         }
-        for (String s : item.goAction.action.cmd) {
+        for (String s : item.getGoAction().action.cmd) {
             if (allowMyMusic(s) || allowApps(s) || allowRadio(s)) {
                 return true;
             }
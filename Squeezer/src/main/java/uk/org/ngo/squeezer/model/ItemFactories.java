@@ -0,0 +1,61 @@
+package uk.org.ngo.squeezer.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the factories for the model objects which are created from CLI results.
+ * <p>
+ * The factories call the constructors directly, so no reflection is needed for each record of a
+ * result.
+ */
+public final class ItemFactories {
+    private static final Map<Class<?>, ItemFactory<?>> factories = new HashMap<>();
+
+    static {
+        register(JiveItem.class, new ItemFactory<JiveItem>() {
+            @Override
+            public JiveItem create(Map<String, Object> record) {
+                return new JiveItem(record);
+            }
+
+            @Override
+            public JiveItem create(Map<String, Object> record, @Nullable ActionTemplates templates) {
+                return new JiveItem(record, templates);
+            }
+        });
+        register(Song.class, Song::new);
+        register(MusicFolderItem.class, MusicFolderItem::new);
+        register(Alarm.class, Alarm::new);
+        register(AlarmPlaylist.class, AlarmPlaylist::new);
+        register(CurrentPlaylistItem.class, new ItemFactory<CurrentPlaylistItem>() {
+            @Override
+            public CurrentPlaylistItem create(Map<String, Object> record) {
+                return new CurrentPlaylistItem(record);
+            }
+
+            @Override
+            public CurrentPlaylistItem create(Map<String, Object> record, @Nullable ActionTemplates templates) {
+                return new CurrentPlaylistItem(record, templates);
+            }
+        });
+    }
+
+    private ItemFactories() {
+    }
+
+    private static <T> void register(Class<T> dataType, ItemFactory<T> factory) {
+        factories.put(dataType, factory);
+    }
+
+    /**
+     * @return The factory for the supplied type, or null if none is registered
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> ItemFactory<T> get(Class<T> dataType) {
+        return (ItemFactory<T>) factories.get(dataType);
+    }
+}
@@ -0,0 +1,24 @@
+package uk.org.ngo.squeezer.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Creates a model object from a record of a CLI result.
+ *
+ * @param <T> Type of the model object
+ * @see ItemFactories
+ */
+public interface ItemFactory<T> {
+    T create(Map<String, Object> record);
+
+    /**
+     * Create a model object from a record of a page with a base record.
+     *
+     * @param templates The action templates of the base record, created once for the page
+     */
+    default T create(Map<String, Object> record, @Nullable ActionTemplates templates) {
+        return create(record);
+    }
+}
@@ -0,0 +1,226 @@
+package uk.org.ngo.squeezer.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The record a {@link JiveItem} was created from, kept so the item can be recreated, f.e. as a
+ * custom shortcut.
+ * <p>
+ * The record is kept as an immutable snapshot of the parsed structure instead of as JSON text, so
+ * it isn't serialized when the item is created, nor parsed when it is requested. Maps are stored
+ * as arrays of keys and values, and the keys, which repeat across items, are interned. The base
+ * record, which LMS sends once per page, is not copied into the snapshot but shared by all items
+ * of the page, together with the {@link ActionTemplates} prepared from it. A mutable record is
+ * only materialized when it is requested.
+ */
+final class ItemRecord {
+    private static final String BASE = "base";
+
+    private final Map<String, Object> record;
+    private final ActionTemplates templates;
+
+    /**
+     * @param record The record as received from the server, optionally with the base record of
+     *     the page in the "base" field.
+     */
+    ItemRecord(Map<String, Object> record) {
+        this(record, null);
+    }
+
+    /**
+     * @param record The record as received from the server, optionally with the base record of
+     *     the page in the "base" field.
+     * @param templates The templates of the base record of the page, or null to prepare them from
+     *     the "base" field of the record, if it has one.
+     */
+    @SuppressWarnings("unchecked")
+    ItemRecord(Map<String, Object> record, @Nullable ActionTemplates templates) {
+        this.record = CompactMap.of(record, BASE);
+        if (templates == null) {
+            Map<String, Object> base = (Map<String, Object>) record.get(BASE);
+            templates = (base != null) ? new ActionTemplates(base) : null;
+        }
+        this.templates = templates;
+    }
+
+    /**
+     * @return A copy of this record with the supplied field set to the supplied value
+     */
+    ItemRecord with(String key, Object value) {
+        Map<String, Object> map = new HashMap<>(record);
+        map.put(key, value);
+        return new ItemRecord(map, templates);
+    }
+
+    /**
+     * @return The fields of the record, without the base record
+     */
+    Map<String, Object> fields() {
+        return record;
+    }
+
+    /**
+     * @return The base record shared by the items of the page, or null
+     */
+    Map<String, Object> base() {
+        return (templates != null) ? templates.base() : null;
+    }
+
+    /**
+     * @return The action templates of the base record, or null
+     */
+    ActionTemplates templates() {
+        return templates;
+    }
+
+    /**
+     * @return A mutable copy of the record, including the base record. Nested maps and arrays are
+     *     shared with this record, and must not be modified.
+     */
+    Map<String, Object> materialize() {
+        Map<String, Object> map = new HashMap<>(record.size() + 1);
+        map.putAll(record);
+        if (templates != null) {
+            map.put(BASE, templates.base());
+        }
+        return map;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return record.toString();
+    }
+
+    /**
+     * Immutable map backed by arrays of keys and values. Lookup is a linear search, which is fast
+     * for the small maps of a record, in particular as the keys are interned.
+     */
+    static final class CompactMap extends AbstractMap<String, Object> {
+        private static final CompactMap EMPTY = new CompactMap(new String[0], new Object[0]);
+
+        private final String[] keys;
+        private final Object[] values;
+
+        private CompactMap(String[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * @return An immutable snapshot of the supplied map, including nested maps and arrays,
+         *     without the supplied key.
+         */
+        static CompactMap of(Map<String, Object> map, String excludedKey) {
+            int size = map.size() - (excludedKey != null && map.containsKey(excludedKey) ? 1 : 0);
+            if (size == 0) {
+                return EMPTY;
+            }
+            String[] keys = new String[size];
+            Object[] values = new Object[size];
+            int i = 0;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                String key = entry.getKey();
+                if (key.equals(excludedKey)) {
+                    continue;
+                }
+                keys[i] = key.intern();
+                values[i] = compact(entry.getValue());
+                i++;
+            }
+            return new CompactMap(keys, values);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Object compact(Object value) {
+            if (value instanceof CompactMap) {
+                return value;
+            }
+            if (value instanceof Map) {
+                return of((Map<String, Object>) value, null);
+            }
+            if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                Object[] result = new Object[array.length];
+                for (int i = 0; i < array.length; i++) {
+                    result[i] = compact(array[i]);
+                }
+                return result;
+            }
+            return value;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int i = indexOf(key);
+            return (i >= 0) ? values[i] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @NonNull
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @NonNull
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+    }
+}
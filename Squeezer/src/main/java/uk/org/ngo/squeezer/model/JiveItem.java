@@ -25,11 +25,10 @@ import android.text.TextUtils;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import androidx.appcompat.content.res.AppCompatResources;
 
-import org.eclipse.jetty.util.ajax.JSON;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -42,6 +41,7 @@ import java.util.Set;
 import uk.org.ngo.squeezer.R;
 import uk.org.ngo.squeezer.Squeezer;
 import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.util.StringPool;
 
 
 public class JiveItem extends Item {
@@ -81,13 +81,13 @@ public class JiveItem extends Item {
 
     private JiveItem(String id, String node, @StringRes int text, int weight, Window.WindowStyle windowStyle) {
         this(record(id, node, Squeezer.getContext().getString(text), weight));
-        window = new Window();
+        setWindow(new Window());
         window.windowStyle = windowStyle;
     }
 
     public JiveItem(String id, String node, String text, int weight, Window.WindowStyle windowStyle) {
         this(record(id, node, text, weight));
-        window = new Window();
+        setWindow(new Window());
         window.windowStyle = windowStyle;
     }
 
@@ -101,7 +101,20 @@ public class JiveItem extends Item {
     }
 
 
-    private String record;
+    /*
+     * Parts of the item which are extracted from the record on first access, so creating an item
+     * only pays for what is needed to show it in a list.
+     */
+    private static final int ACTIONS = 1;
+    private static final int WINDOW = 2;
+    private static final int INPUT = 4;
+    private static final int SLIDER = 8;
+    private static final int SUB_ITEMS = 16;
+    private static final int ALL = ACTIONS | WINDOW | INPUT | SLIDER | SUB_ITEMS;
+
+    private ItemRecord record;
+    /** The parts which have been extracted, guarded by this */
+    private int extracted = ALL;
     private String id;
     @NonNull
     private String name;
@@ -116,23 +129,23 @@ public class JiveItem extends Item {
     private String type;
 
     public Action.NextWindow nextWindow;
-    public Input input;
+    private Input input;
     public String inputValue;
-    public Window window;
-    public boolean doAction;
-    public Action goAction;
-    public Action playAction;
-    public Action addAction;
-    public Action insertAction;
-    public Action moreAction;
-    public List<JiveItem> subItems;
+    private Window window;
+    private boolean doAction;
+    private Action goAction;
+    private Action playAction;
+    private Action addAction;
+    private Action insertAction;
+    private Action moreAction;
+    private List<JiveItem> subItems;
     public boolean showBigArtwork;
     public int selectedIndex;
     public String[] choiceStrings;
     public Boolean checkbox;
-    public Map<Boolean, Action> checkboxActions;
+    private Map<Boolean, Action> checkboxActions;
     public Boolean radio;
-    public Slider slider;
+    private Slider slider;
 
     private SlimCommand downloadCommand;
     private SlimCommand randomPlayFolderCommand;
@@ -154,8 +167,11 @@ public class JiveItem extends Item {
     /** The URL to use to download the icon. */
     @NonNull
     public Uri getIcon() {
-        if (icon.equals(Uri.EMPTY) && window != null) {
-            return window.icon;
+        if (icon.equals(Uri.EMPTY)) {
+            Window window = getWindow();
+            if (window != null) {
+                return window.icon;
+            }
         }
         return icon;
     }
@@ -299,28 +315,102 @@ public class JiveItem extends Item {
 
 
     public boolean isSelectable() {
-        return (goAction != null || nextWindow != null || hasSubItems()|| node != null || checkbox != null);
+        return (hasGoAction() || nextWindow != null || hasSubItems()|| node != null || checkbox != null);
     }
 
     public boolean hasContextMenu() {
-        return (playAction != null || addAction != null || insertAction != null || moreAction != null || checkbox != null || radio != null);
+        return (hasContextMenuActions() || checkbox != null || radio != null);
+    }
+
+    public Window getWindow() {
+        extract(WINDOW);
+        return window;
+    }
+
+    public void setWindow(Window window) {
+        extract(WINDOW);
+        this.window = window;
+    }
+
+    public Input getInput() {
+        extract(INPUT);
+        return input;
+    }
+
+    public boolean isDoAction() {
+        extract(ACTIONS);
+        return doAction;
+    }
+
+    public Action getGoAction() {
+        extract(ACTIONS);
+        return goAction;
+    }
+
+    public void setGoAction(Action goAction) {
+        extract(ACTIONS);
+        this.goAction = goAction;
+    }
+
+    public Action getPlayAction() {
+        extract(ACTIONS);
+        return playAction;
+    }
+
+    public Action getAddAction() {
+        extract(ACTIONS);
+        return addAction;
+    }
+
+    public Action getInsertAction() {
+        extract(ACTIONS);
+        return insertAction;
+    }
+
+    public Action getMoreAction() {
+        extract(ACTIONS);
+        return moreAction;
+    }
+
+    public void setMoreAction(Action moreAction) {
+        extract(ACTIONS);
+        this.moreAction = moreAction;
+    }
+
+    public Action getCheckboxAction(boolean checked) {
+        extract(ACTIONS);
+        return checkboxActions.get(checked);
+    }
+
+    public List<JiveItem> getSubItems() {
+        extract(SUB_ITEMS);
+        return subItems;
+    }
+
+    public Slider getSlider() {
+        extract(SLIDER);
+        return slider;
     }
 
     public Map<String, Object> getRecord() {
-        JSON json = new JSON();
-        return (Map) json.fromJSON(this.record);
+        return record.materialize();
     }
 
     public void appendWeight(int weight) {
-        JSON json = new JSON();
-        Map<String, Object> map = (Map) json.fromJSON(this.record);
-        map.put("weight", weight);
-        this.record = json.toJSON(map);
+        record = record.with("weight", weight);
     }
 
     public JiveItem(Map<String, Object> record) {
-        JSON json = new JSON();
-        this.record = json.toJSON(record);
+        this(record, null);
+    }
+
+    /**
+     * @param templates The action templates of the base record of the page, shared by the items of
+     *     the page, or null to prepare them from the "base" field of the record.
+     */
+    public JiveItem(Map<String, Object> record, @Nullable ActionTemplates templates) {
+        this.record = new ItemRecord(record, templates);
+        extracted = 0;
         setId(getString(record, record.containsKey("cmd") ? "cmd" : "id"));
         splitItemText(getStringOrEmpty(record, record.containsKey("name") ? "name" : "text"));
         icon = getImageUrl(record, record.containsKey("icon-id") ? "icon-id" : "icon");
@@ -329,27 +419,66 @@ public class JiveItem extends Item {
         node = originalNode = getString(record, "node");
         weight = getInt(record, "weight");
         type = getString(record, "type");
-        Map<String, Object> baseRecord = getRecord(record, "base");
-        Map<String, Object> baseActions = (baseRecord != null ? getRecord(baseRecord, "actions") : null);
-        Map<String, Object> baseWindow = (baseRecord != null ? getRecord(baseRecord, "window") : null);
-        Map<String, Object> actionsRecord = getRecord(record, "actions");
         nextWindow = Action.NextWindow.fromString(getString(record, "nextWindow"));
-        input = extractInput(getRecord(record, "input"));
-        window = extractWindow(getRecord(record, "window"), baseWindow);
+        showBigArtwork = record.containsKey("showBigArtwork");
+        selectedIndex = getInt(record, "selectedIndex");
+        choiceStrings = Util.getStringArray(record, "choiceStrings");
+        if (record.containsKey("checkbox")) {
+            checkbox = (getInt(record, "checkbox") != 0);
+        }
+        if (record.containsKey("radio")) {
+            radio = (getInt(record, "radio") != 0);
+        }
+    }
+
+    /**
+     * Extract the supplied parts from the record, unless that has already been done.
+     */
+    private synchronized void extract(int parts) {
+        int missing = parts & ~extracted;
+        if (missing == 0) {
+            return;
+        }
+        extracted |= missing;
+
+        Map<String, Object> record = this.record.fields();
+        Map<String, Object> baseRecord = this.record.base();
+        if ((missing & ACTIONS) != 0) {
+            extractActions(record, this.record.templates());
+        }
+        if ((missing & WINDOW) != 0) {
+            window = extractWindow(getRecord(record, "window"), baseRecord != null ? getRecord(baseRecord, "window") : null);
+        }
+        if ((missing & INPUT) != 0) {
+            input = extractInput(getRecord(record, "input"));
+        }
+        if ((missing & SLIDER) != 0) {
+            slider = extractSlider(record);
+        }
+        if ((missing & SUB_ITEMS) != 0) {
+            subItems = extractSubItems((Object[]) record.get("item_loop"));
+        }
+    }
+
+    private synchronized boolean isExtracted(int part) {
+        return (extracted & part) != 0;
+    }
+
+    private void extractActions(Map<String, Object> record, ActionTemplates baseActions) {
+        Map<String, Object> actionsRecord = getRecord(record, "actions");
 
         // do takes precedence over go
-        goAction = extractAction("do", baseActions, actionsRecord, record, baseRecord);
+        goAction = extractAction("do", baseActions, actionsRecord, record);
         doAction = (goAction != null);
         if (goAction == null) {
             // check if item instructs us to use a different action
-            String goActionName = record.containsKey("goAction") ? getString(record, "goAction") : "go";
-            goAction = extractAction(goActionName, baseActions, actionsRecord, record, baseRecord);
+            goAction = extractAction(goActionName(record), baseActions, actionsRecord, record);
         }
 
-        playAction = extractAction("play", baseActions, actionsRecord, record, baseRecord);
-        addAction = extractAction("add", baseActions, actionsRecord, record, baseRecord);
-        insertAction = extractAction("add-hold", baseActions, actionsRecord, record, baseRecord);
-        moreAction = extractAction("more", baseActions, actionsRecord, record, baseRecord);
+        playAction = extractAction("play", baseActions, actionsRecord, record);
+        addAction = extractAction("add", baseActions, actionsRecord, record);
+        insertAction = extractAction("add-hold", baseActions, actionsRecord, record);
+        moreAction = extractAction("more", baseActions, actionsRecord, record);
         if (moreAction != null) {
             moreAction.action.params.put("xmlBrowseInterimCM", 1);
         }
@@ -357,35 +486,67 @@ public class JiveItem extends Item {
         downloadCommand = extractDownloadAction(record);
         randomPlayFolderCommand = downloadCommand;
 
-        subItems = extractSubItems((Object[]) record.get("item_loop"));
-        showBigArtwork = record.containsKey("showBigArtwork");
-
-        selectedIndex = getInt(record, "selectedIndex");
-        choiceStrings = Util.getStringArray(record, "choiceStrings");
         if (goAction != null && goAction.action != null && goAction.action.cmd.size() == 0) {
             doAction = true;
         }
 
-        if (record.containsKey("checkbox")) {
-            checkbox = (getInt(record, "checkbox") != 0);
+        if (checkbox != null) {
             checkboxActions = new HashMap<>();
-            checkboxActions.put(true, extractAction("on", baseActions, actionsRecord, record, baseRecord));
-            checkboxActions.put(false, extractAction("off", baseActions, actionsRecord, record, baseRecord));
+            checkboxActions.put(true, extractAction("on", baseActions, actionsRecord, record));
+            checkboxActions.put(false, extractAction("off", baseActions, actionsRecord, record));
         }
+    }
 
-        if (record.containsKey("radio")) {
-            radio = (getInt(record, "radio") != 0);
+    private static String goActionName(Map<String, Object> record) {
+        return record.containsKey("goAction") ? getString(record, "goAction") : "go";
+    }
+
+    /**
+     * @return True if the item has a go (or do) action, without extracting the actions
+     */
+    private boolean hasGoAction() {
+        if (isExtracted(ACTIONS)) {
+            return goAction != null;
         }
+        return hasAction("do") || hasAction(goActionName(record.fields()));
+    }
 
-        if (record.containsKey("slider")) {
-            slider = new Slider();
-            slider.min = getInt(record, "min");
-            slider.max = getInt(record, "max");
-            slider.adjust = getInt(record, "adjust");
-            slider.initial = getInt(record, "initial");
-            slider.sliderIcons = getString(record, "sliderIcons");
-            slider.help = getString(record, "help");
+    /**
+     * @return True if the item has any of the actions of the context menu, without extracting
+     *     the actions
+     */
+    private boolean hasContextMenuActions() {
+        if (isExtracted(ACTIONS)) {
+            return (playAction != null || addAction != null || insertAction != null || moreAction != null);
         }
+        return (hasAction("play") || hasAction("add") || hasAction("add-hold") || hasAction("more"));
+    }
+
+    /**
+     * @return True if {@link #extractAction(String, ActionTemplates, Map, Map)} will find the supplied action
+     */
+    private boolean hasAction(String actionName) {
+        Map<String, Object> record = this.record.fields();
+        Map<String, Object> itemActions = getRecord(record, "actions");
+        if (itemActions != null && itemActions.get(actionName) instanceof Map) {
+            return true;
+        }
+        ActionTemplates baseActions = this.record.templates();
+        ActionTemplates.Template baseAction = (baseActions != null ? baseActions.get(actionName) : null);
+        return baseAction != null && baseAction.itemsParams != null && getRecord(record, baseAction.itemsParams) != null;
+    }
+
+    private Slider extractSlider(Map<String, Object> record) {
+        if (!record.containsKey("slider")) return null;
+
+        Slider slider = new Slider();
+        slider.min = getInt(record, "min");
+        slider.max = getInt(record, "max");
+        slider.adjust = getInt(record, "adjust");
+        slider.initial = getInt(record, "initial");
+        slider.sliderIcons = getString(record, "sliderIcons");
+        slider.help = getString(record, "help");
+        return slider;
     }
 
     public JiveItem(Parcel source) {
@@ -425,6 +586,7 @@ public class JiveItem extends Item {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        extract(ALL);
         dest.writeString(getId());
         dest.writeString(name);
         dest.writeString(text2);
@@ -465,7 +627,7 @@ public class JiveItem extends Item {
     }
 
     public boolean hasInputField() {
-        return (input != null);
+        return isExtracted(INPUT) ? input != null : record.fields().get("input") != null;
     }
 
     public boolean hasChoices() {
@@ -473,7 +635,7 @@ public class JiveItem extends Item {
     }
 
     public boolean hasSlider() {
-        return (slider != null);
+        return isExtracted(SLIDER) ? slider != null : record.fields().containsKey("slider");
     }
 
     public boolean isInputReady() {
@@ -481,18 +643,20 @@ public class JiveItem extends Item {
     }
 
     public boolean hasSubItems() {
-        return (subItems != null);
+        return isExtracted(SUB_ITEMS) ? subItems != null : record.fields().get("item_loop") != null;
     }
 
     public boolean canDownload() {
-        return downloadCommand != null;
+        return downloadCommand() != null;
     }
 
     public SlimCommand downloadCommand() {
+        extract(ACTIONS);
         return downloadCommand;
     }
 
     public SlimCommand randomPlayFolderCommand() {
+        extract(ACTIONS);
         return randomPlayFolderCommand;
     }
 
@@ -511,12 +675,12 @@ public class JiveItem extends Item {
                 + ", name: " + getName()
                 + ", node: " + node
                 + ", weight: " + getWeight()
-                + ", go: " + goAction
-                + ", play: " + playAction
-                + ", add: " + addAction
-                + ", insert: " + insertAction
-                + ", more: " + moreAction
-                + ", window: " + window
+                + ", go: " + getGoAction()
+                + ", play: " + getPlayAction()
+                + ", add: " + getAddAction()
+                + ", insert: " + getInsertAction()
+                + ", more: " + getMoreAction()
+                + ", window: " + getWindow()
                 + ", originalNode: " + originalNode;
 
     }
@@ -531,8 +695,9 @@ public class JiveItem extends Item {
         // This happens enough for regular expressions to be ineffective
         int nameEnd = text.indexOf('\n');
         if (nameEnd > 0) {
-            name = text.substring(0, nameEnd);
-            text2 = text.substring(nameEnd+1);
+            // The parts are new strings, f.e. the artist of each album, so share them
+            name = StringPool.getDefault().intern(text.substring(0, nameEnd));
+            text2 = StringPool.getDefault().intern(text.substring(nameEnd+1));
         } else {
             name = text;
             text2 = "";
@@ -605,71 +770,24 @@ public class JiveItem extends Item {
         return input;
     }
 
-    private Action extractAction(String actionName, Map<String, Object> baseActions, Map<String, Object> itemActions, Map<String, Object> record, Map<String, Object> baseRecord) {
-        Map<String, Object> actionRecord = null;
-        Map<String, Object> itemParams = null;
+    /**
+     * Build the supplied action, either from the item's own action record, or from the shared
+     * template of the base action and the item's parameters.
+     */
+    private Action extractAction(String actionName, ActionTemplates baseActions, Map<String, Object> itemActions, Map<String, Object> record) {
+        Action.NextWindow baseNextWindow = (baseActions != null ? baseActions.nextWindow() : null);
 
         Object itemAction = (itemActions != null ? itemActions.get(actionName) : null);
         if (itemAction instanceof Map) {
-            actionRecord = (Map<String, Object>) itemAction;
-        }
-        if (actionRecord == null && baseActions != null) {
-            Map<String, Object> baseAction = getRecord(baseActions, actionName);
-            if (baseAction != null) {
-                String itemsParams = (String) baseAction.get("itemsParams");
-                if (itemsParams != null) {
-                    itemParams = getRecord(record, itemsParams);
-                    if (itemParams != null) {
-                        actionRecord = baseAction;
-                    }
-                }
-            }
-        }
-        if (actionRecord == null) return null;
-
-        Action actionHolder = new Action();
-
-        if (actionRecord.containsKey("choices")) {
-            Object[] choices = (Object[]) actionRecord.get("choices");
-            actionHolder.choices = new Action.JsonAction[choices.length];
-            for (int i = 0; i < choices.length; i++) {
-                actionRecord = (Map<String, Object>) choices[i];
-                actionHolder.choices[i]= extractJsonAction(baseRecord, actionRecord, itemParams);
-            }
-        } else {
-            actionHolder.action = extractJsonAction(baseRecord, actionRecord, itemParams);
-        }
-
-        return actionHolder;
-    }
-
-    private Action.JsonAction extractJsonAction(Map<String, Object> baseRecord, Map<String, Object> actionRecord, Map<String, Object> itemParams) {
-        Action.JsonAction action = new Action.JsonAction();
-
-        action.nextWindow = Action.NextWindow.fromString(getString(actionRecord, "nextWindow"));
-        if (action.nextWindow == null) action.nextWindow = nextWindow;
-        if (action.nextWindow == null && baseRecord != null)
-            action.nextWindow = Action.NextWindow.fromString(getString(baseRecord, "nextWindow"));
-
-        action.cmd(Util.getStringArray(actionRecord, "cmd"));
-        Map<String, Object> params = getRecord(actionRecord, "params");
-        if (params != null) {
-            action.params(params);
-        }
-        if (itemParams != null) {
-            action.params(itemParams);
-        }
-        action.param("useContextMenu", "1");
-
-        Map<String, Object> windowRecord = getRecord(actionRecord, "window");
-        if (windowRecord != null) {
-            action.window = new Action.ActionWindow(getInt(windowRecord, "isContextMenu") != 0);
+            return new ActionTemplates.Template((Map<String, Object>) itemAction).build(nextWindow, baseNextWindow, null);
         }
 
-        // LMS may send isContextMenu in the itemParams, but this is ignored by squeezeplay, so we must do the same.
-        action.isContextMenu = (params != null && params.containsKey("isContextMenu")) || (action.window != null && action.window.isContextMenu);
+        ActionTemplates.Template baseAction = (baseActions != null ? baseActions.get(actionName) : null);
+        if (baseAction == null || baseAction.itemsParams == null) return null;
+        Map<String, Object> itemParams = getRecord(record, baseAction.itemsParams);
+        if (itemParams == null) return null;
 
-        return action;
+        return baseAction.build(nextWindow, baseNextWindow, itemParams);
     }
 
     private List<JiveItem> extractSubItems(Object[] item_loop) {
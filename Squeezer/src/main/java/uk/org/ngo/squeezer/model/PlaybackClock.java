@@ -0,0 +1,94 @@
+package uk.org.ngo.squeezer.model;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The play position of a player, as the position at a point in time and the rate at which it
+ * advances from there.
+ * <p>
+ * The position at any other time is derived from these, so consumers can query or animate against
+ * the clock without new statuses from the server. A new clock is only a discontinuity if it isn't
+ * where the previous clock predicted, i.e. after a seek, pause, track change or rate change.
+ * <p>
+ * Times are in seconds of {@link SystemClock#elapsedRealtime()}.
+ */
+public class PlaybackClock {
+    /** The position of a stopped player. */
+    public static final PlaybackClock STOPPED = new PlaybackClock(0, 0, 0);
+
+    /**
+     * How far the position of a new clock may be from the prediction of the previous clock, to
+     * allow for the latency and rounding of statuses.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /** Play position at {@link #time}, in seconds. */
+    public final double position;
+
+    /** When the position was seen. */
+    public final double time;
+
+    /** How fast the position advances, 1 for normal playback, 0 when not playing. */
+    public final double rate;
+
+    public PlaybackClock(double position, double time, double rate) {
+        this.position = position;
+        this.time = time;
+        this.rate = rate;
+    }
+
+    /**
+     * @return The play position at the supplied time, in seconds
+     */
+    public double getPosition(double now) {
+        double correction = rate * (now - time);
+        return (correction <= 0) ? position : position + correction;
+    }
+
+    /**
+     * @return The play position now, in seconds
+     */
+    public double getPosition() {
+        return getPosition(now());
+    }
+
+    /**
+     * @return Milliseconds from the supplied time until the play position reaches the next whole
+     *     second, or -1 if the position doesn't advance.
+     */
+    public long millisToNextSecond(double now) {
+        if (rate <= 0) {
+            return -1;
+        }
+        double position = getPosition(now);
+        double remaining = Math.floor(position) + 1 - position;
+        return (long) Math.ceil(remaining * 1000 / rate);
+    }
+
+    /**
+     * @return True if the supplied clock is the continuation of this clock, i.e. it advances at the
+     *     same rate from where this clock predicts.
+     */
+    public boolean isContinuedBy(@NonNull PlaybackClock next) {
+        return next.rate == rate && Math.abs(getPosition(next.time) - next.position) <= TOLERANCE;
+    }
+
+    /**
+     * @return The current time in the time base of the clock
+     */
+    public static double now() {
+        return SystemClock.elapsedRealtime() / 1000.0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PlaybackClock{" +
+                "position=" + position +
+                ", time=" + time +
+                ", rate=" + rate +
+                '}';
+    }
+}
@@ -19,7 +19,6 @@ package uk.org.ngo.squeezer.model;
 
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.os.SystemClock;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
@@ -65,7 +64,7 @@ public class PlayerState implements Parcelable {
         currentPlaylist = source.readString();
         currentPlaylistTimestamp = source.readLong();
         currentPlaylistIndex = source.readInt();
-        currentTimeSecond = source.readDouble();
+        playbackClock = new PlaybackClock(source.readDouble(), source.readDouble(), source.readDouble());
         currentSongDuration = source.readInt();
         currentVolume = source.readInt();
         sleepDuration = source.readInt();
@@ -86,7 +85,9 @@ public class PlayerState implements Parcelable {
         dest.writeString(currentPlaylist);
         dest.writeLong(currentPlaylistTimestamp);
         dest.writeInt(currentPlaylistIndex);
-        dest.writeDouble(currentTimeSecond);
+        dest.writeDouble(playbackClock.position);
+        dest.writeDouble(playbackClock.time);
+        dest.writeDouble(playbackClock.rate);
         dest.writeInt(currentSongDuration);
         dest.writeInt(currentVolume);
         dest.writeInt(sleepDuration);
@@ -126,9 +127,8 @@ public class PlayerState implements Parcelable {
 
     public boolean waitingToPlay;
 
-    public double rate;
-
-    private double currentTimeSecond;
+    @NonNull
+    private PlaybackClock playbackClock = PlaybackClock.STOPPED;
 
     private int currentSongDuration;
 
@@ -155,6 +155,26 @@ public class PlayerState implements Parcelable {
     @NonNull
     public Map<Player.Pref, String> prefs = new HashMap<>();
 
+    /**
+     * The fields of the last status received from the server which are compared with the next
+     * status, so only what changed needs to be processed. Not parcelled.
+     */
+    @Nullable
+    private Map<String, Object> lastStatus;
+
+    /**
+     * @return The compared fields of the last status received from the server, or null if no
+     *     status has been received
+     */
+    @Nullable
+    public Map<String, Object> getLastStatus() {
+        return lastStatus;
+    }
+
+    public void setLastStatus(@Nullable Map<String, Object> status) {
+        lastStatus = (status != null) ? Collections.unmodifiableMap(status) : null;
+    }
+
     public boolean isPlaying() {
         return PLAY_STATE_PLAY.equals(playStatus);
     }
@@ -286,18 +306,24 @@ public class PlayerState implements Parcelable {
         this.remote = remote;
     }
 
-    public boolean setCurrentTimeSecond(double value) {
-        if (value == currentTimeSecond)
-            return false;
+    @NonNull
+    public PlaybackClock getPlaybackClock() {
+        return playbackClock;
+    }
 
-        currentTimeSecond = value;
-        return true;
+    /**
+     * Set the play position from a new status.
+     *
+     * @return True if the play position is not where it was predicted by the previous status
+     */
+    public boolean setPlaybackClock(@NonNull PlaybackClock value) {
+        boolean discontinuity = !playbackClock.isContinuedBy(value);
+        playbackClock = value;
+        return discontinuity;
     }
 
     public int getTrackElapsed() {
-        double now = SystemClock.elapsedRealtime() / 1000.0;
-        double trackCorrection = rate * (now - statusSeen);
-        return  (int) (trackCorrection <= 0 ? currentTimeSecond : currentTimeSecond + trackCorrection);
+        return (int) playbackClock.getPosition();
     }
 
     public int getCurrentSongDuration() {
@@ -404,6 +430,20 @@ public class PlayerState implements Parcelable {
     public static final String PLAY_STATE_PAUSE = "pause";
     public static final String PLAY_STATE_STOP = "stop";
 
+    /* Flags for the parts of the player state which were changed by a status from the server. */
+    public static final int CHANGED_POWER = 1;
+    public static final int CHANGED_PLAY_STATUS = 1 << 1;
+    public static final int CHANGED_SHUFFLE = 1 << 2;
+    public static final int CHANGED_REPEAT = 1 << 3;
+    public static final int CHANGED_PLAYLIST = 1 << 4;
+    public static final int CHANGED_SLEEP = 1 << 5;
+    public static final int CHANGED_SONG = 1 << 6;
+    public static final int CHANGED_SONG_DURATION = 1 << 7;
+    /** The play position jumped or the rate changed, see {@link PlaybackClock} */
+    public static final int CHANGED_SONG_TIME = 1 << 8;
+    public static final int CHANGED_VOLUME = 1 << 9;
+    public static final int CHANGED_SYNC = 1 << 10;
+
     @Override
     public String toString() {
         return "PlayerState{" +
@@ -414,7 +454,7 @@ public class PlayerState implements Parcelable {
                 ", currentSong=" + currentSong +
                 ", currentPlaylist='" + currentPlaylist + '\'' +
                 ", currentPlaylistIndex=" + currentPlaylistIndex +
-                ", currentTimeSecond=" + currentTimeSecond +
+                ", playbackClock=" + playbackClock +
                 ", currentSongDuration=" + currentSongDuration +
                 ", currentVolume=" + currentVolume +
                 ", sleepDuration=" + sleepDuration +
@@ -17,15 +17,19 @@
 package uk.org.ngo.squeezer.service;
 
 import android.os.SystemClock;
-import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
 import de.greenrobot.event.EventBus;
 import uk.org.ngo.squeezer.R;
@@ -33,21 +37,29 @@ import uk.org.ngo.squeezer.Squeezer;
 import uk.org.ngo.squeezer.Util;
 import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
 import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
+import uk.org.ngo.squeezer.model.PlaybackClock;
 import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.PlayerState;
 import uk.org.ngo.squeezer.model.SlimCommand;
-import uk.org.ngo.squeezer.service.event.MusicChanged;
-import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
 import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
-import uk.org.ngo.squeezer.service.event.PlayerVolume;
-import uk.org.ngo.squeezer.service.event.PlaylistChanged;
-import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
-import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
-import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStatusDelta;
 
 abstract class BaseClient implements SlimClient {
     final static int mPageSize = Squeezer.getContext().getResources().getInteger(R.integer.PageSize);
 
+    /** Number of items to request in each response, by command. */
+    final PageSizeTuner mPageSizeTuner = new PageSizeTuner(mPageSize);
+
+    /** Maximum number of ranges of a full list which are requested at the same time. */
+    static final int FULL_LIST_WINDOW = 2;
+
+    /** Fields of a player status which are compared with the previous status, see {@link #parseStatus(Player, Map, Map)}. */
+    private static final String[] COMPARED_STATUS_FIELDS = {
+            "power", "playlist shuffle", "playlist repeat", "playlist_timestamp", "playlist_tracks",
+            "playlist_cur_index", "playlist_name", "will_sleep_in", "sleep", "current_title",
+            "remote", "duration", "sync_master", "sync_slaves", "mode"
+    };
+
     final AtomicReference<String> username = new AtomicReference<>();
     final AtomicReference<String> password = new AtomicReference<>();
 
@@ -56,11 +68,15 @@ abstract class BaseClient implements SlimClient {
     /** Shared event bus for status changes. */
     @NonNull final EventBus mEventBus;
 
+    /** Posts the individual events for status changes, for the subscribers which need them. */
+    @NonNull private final LegacyStatusEvents mLegacyStatusEvents;
+
     /** The prefix for URLs for downloads and cover art. */
     String mUrlPrefix;
 
     BaseClient(@NonNull EventBus eventBus) {
         mEventBus = eventBus;
+        mLegacyStatusEvents = new LegacyStatusEvents(eventBus);
         mConnectionState = new ConnectionState(eventBus);
     }
 
@@ -72,7 +88,51 @@ abstract class BaseClient implements SlimClient {
     @Override
     public <T> void requestItems(Player player, String[] cmd, Map<String, Object> params, int start, int pageSize, IServiceItemListCallback<T> callback) {
         final BaseClient.BrowseRequest<T> browseRequest = new BaseClient.BrowseRequest<>(player, cmd, params, start, pageSize, callback);
-        internalRequestItems(browseRequest);
+        int itemsPerResponse = itemsPerResponse(browseRequest, browseRequest.getStart(), Integer.MAX_VALUE);
+        callback.onItemsOrdered(browseRequest.getStart(), itemsPerResponse);
+        internalRequestItems(browseRequest.update(browseRequest.getStart(), itemsPerResponse));
+    }
+
+    /**
+     * @param start Position of the first item to request
+     * @param count Total number of items, if known
+     *
+     * @return The number of items to request for the supplied browse request from start. This is
+     *     the size adapted to the command. Unless the full list is requested, it's rounded down to
+     *     whole pages if it reaches the end of the page containing start, so responses can hold
+     *     several pages, or chunks of a page, but never end inside a page they didn't start in.
+     */
+    int itemsPerResponse(BrowseRequest<?> browseRequest, int start, int count) {
+        int items = mPageSizeTuner.getItemsPerResponse(browseRequest.getCommand());
+        if (!browseRequest.isFullList()) {
+            int pageSize = browseRequest.getPageSize();
+            int restOfPage = pageSize - start % pageSize;
+            if (items >= restOfPage) {
+                items = restOfPage + (items - restOfPage) / pageSize * pageSize;
+            }
+        }
+        return Math.min(items, count - start);
+    }
+
+    /**
+     * Request the rest of a full list in ranges, up to {@link #FULL_LIST_WINDOW} at a time.
+     *
+     * @param browseRequest The request for the full list
+     * @param start Position of the first item which is not received yet
+     * @param count Total number of items
+     */
+    <T> void fetchFullList(BrowseRequest<T> browseRequest, int start, int count) {
+        new FullListFetch<>(browseRequest.getCallback(), new FullListFetch.RangeRequester<T>() {
+            @Override
+            public int itemsPerResponse(int start, int end) {
+                return BaseClient.this.itemsPerResponse(browseRequest, start, end);
+            }
+
+            @Override
+            public void requestRange(FullListFetch<T> fetch, int start, int itemsPerResponse) {
+                internalRequestItems(new BrowseRequest<>(browseRequest, fetch, start, itemsPerResponse));
+            }
+        }, start, count, FULL_LIST_WINDOW).start();
     }
 
     protected abstract <T> void internalRequestItems(BrowseRequest<T> browseRequest);
@@ -92,80 +152,148 @@ abstract class BaseClient implements SlimClient {
         return mUrlPrefix;
     }
 
-    void parseStatus(final Player player, CurrentPlaylistItem currentSong, Map<String, Object> tokenMap) {
+    /**
+     * Update the state of the supplied player from a status received from the server, and post
+     * events for what changed.
+     * <p>
+     * The status is compared with the previous status of the player first, so fields which didn't
+     * change aren't parsed again, and the current song is reused while the server reports the
+     * same track at the same playlist position.
+     *
+     * @param songRecord The record of the current song, or null if the status doesn't have one
+     *
+     * @return The parts of the player state which changed, as the CHANGED_ flags of
+     *     {@link PlayerState}
+     */
+    int parseStatus(final Player player, @Nullable Map<String, Object> songRecord, Map<String, Object> tokenMap) {
         PlayerState playerState = player.getPlayerState();
         playerState.statusSeen = SystemClock.elapsedRealtime() / 1000.0;
+        Map<String, Object> previous = playerState.getLastStatus();
+        playerState.setLastStatus(comparedStatusFields(tokenMap));
 
-        boolean changedPower = playerState.setPoweredOn(Util.getInt(tokenMap, "power") == 1);
-        boolean changedShuffleStatus = playerState.setShuffleStatus(Util.getString(tokenMap, "playlist shuffle"));
-        boolean changedRepeatStatus = playerState.setRepeatStatus(Util.getString(tokenMap, "playlist repeat"));
-        boolean changedPlaylist = playerState.setCurrentPlaylistTimestamp(Util.getLong(tokenMap, "playlist_timestamp"));
-        playerState.setCurrentPlaylistTracksNum(Util.getInt(tokenMap, "playlist_tracks"));
-        playerState.setCurrentPlaylistIndex(Util.getInt(tokenMap, "playlist_cur_index"));
-        playerState.setCurrentPlaylist(Util.getString(tokenMap, "playlist_name"));
-        boolean changedSleep = playerState.setSleep(Util.getInt(tokenMap, "will_sleep_in"));
-        boolean changedSleepDuration = playerState.setSleepDuration(Util.getInt(tokenMap, "sleep"));
-        if (currentSong == null) currentSong = new CurrentPlaylistItem(tokenMap);
-        boolean changedSong = playerState.setCurrentSong(currentSong);
-        playerState.setRemote(Util.getInt(tokenMap, "remote") == 1);
-        playerState.waitingToPlay = Util.getInt(tokenMap, "waitingToPlay") == 1;
-        playerState.rate = Util.getDouble(tokenMap, "rate");
-        boolean changedSongDuration = playerState.setCurrentSongDuration(Util.getInt(tokenMap, "duration"));
-        boolean changedSongTime = playerState.setCurrentTimeSecond(Util.getDouble(tokenMap, "time"));
-        boolean changedVolume = playerState.setCurrentVolume(Util.getInt(tokenMap, "mixer volume"));
-        boolean changedSyncMaster = playerState.setSyncMaster(Util.getString(tokenMap, "sync_master"));
-        boolean changedSyncSlaves = playerState.setSyncSlaves(Arrays.stream(Util.getStringOrEmpty(tokenMap, "sync_slaves").split(",")).filter(it -> !it.isEmpty()).collect(Collectors.toList()));
-        boolean changedPlayStatus = updatePlayStatus(playerState, Util.getString(tokenMap, "mode"));
-
-        // Playing status
-        if (changedPlayStatus) {
-            mEventBus.post(new PlayStatusChanged(playerState.getPlayStatus(), player));
+        int changes = 0;
+        if (changed(previous, tokenMap, "power") && playerState.setPoweredOn(Util.getInt(tokenMap, "power") == 1)) {
+            changes |= PlayerState.CHANGED_POWER;
         }
-
-        // Current playlist
-        if (changedPlaylist) {
-            mEventBus.post(new PlaylistChanged(player));
+        if (changed(previous, tokenMap, "playlist shuffle") && playerState.setShuffleStatus(Util.getString(tokenMap, "playlist shuffle"))) {
+            changes |= PlayerState.CHANGED_SHUFFLE;
         }
-
-        if (changedPower || changedSleep || changedSleepDuration || changedVolume
-                || changedSong || changedSongDuration || changedSongTime
-                || changedSyncMaster || changedSyncSlaves) {
-            postPlayerStateChanged(player);
+        if (changed(previous, tokenMap, "playlist repeat") && playerState.setRepeatStatus(Util.getString(tokenMap, "playlist repeat"))) {
+            changes |= PlayerState.CHANGED_REPEAT;
         }
-
-        // Volume
-        if (changedVolume) {
-            mEventBus.post(new PlayerVolume(player));
+        if (changed(previous, tokenMap, "playlist_timestamp") && playerState.setCurrentPlaylistTimestamp(Util.getLong(tokenMap, "playlist_timestamp"))) {
+            changes |= PlayerState.CHANGED_PLAYLIST;
+        }
+        if (changed(previous, tokenMap, "playlist_tracks")) {
+            playerState.setCurrentPlaylistTracksNum(Util.getInt(tokenMap, "playlist_tracks"));
+        }
+        boolean changedIndex = changed(previous, tokenMap, "playlist_cur_index");
+        if (changedIndex) {
+            playerState.setCurrentPlaylistIndex(Util.getInt(tokenMap, "playlist_cur_index"));
+        }
+        if (changed(previous, tokenMap, "playlist_name")) {
+            playerState.setCurrentPlaylist(Util.getString(tokenMap, "playlist_name"));
+        }
+        if (changed(previous, tokenMap, "will_sleep_in") && playerState.setSleep(Util.getInt(tokenMap, "will_sleep_in"))) {
+            changes |= PlayerState.CHANGED_SLEEP;
+        }
+        if (changed(previous, tokenMap, "sleep") && playerState.setSleepDuration(Util.getInt(tokenMap, "sleep"))) {
+            changes |= PlayerState.CHANGED_SLEEP;
         }
 
-        // Power status
-        if (changedPower) {
-            mEventBus.post(new PowerStatusChanged(player));
+        CurrentPlaylistItem currentSong = playerState.getCurrentSong();
+        String songId = (songRecord != null) ? Util.getString(songRecord, "id") : null;
+        if (currentSong == null || changedIndex || changed(previous, tokenMap, "current_title")
+                || !Objects.equals(songId, currentSong.getId())) {
+            if (playerState.setCurrentSong(createCurrentSong(songRecord, tokenMap))) {
+                changes |= PlayerState.CHANGED_SONG;
+            }
         }
 
-        // Current song
-        if (changedSong) {
-            mEventBus.postSticky(new MusicChanged(player, playerState));
+        if (changed(previous, tokenMap, "remote")) {
+            playerState.setRemote(Util.getInt(tokenMap, "remote") == 1);
+        }
+        playerState.waitingToPlay = Util.getInt(tokenMap, "waitingToPlay") == 1;
+        if (changed(previous, tokenMap, "duration") && playerState.setCurrentSongDuration(Util.getInt(tokenMap, "duration"))) {
+            changes |= PlayerState.CHANGED_SONG_DURATION;
+        }
+        // Only a jump in the play position or a change of rate is a change, the position in between
+        // is derived from the clock
+        if (playerState.setPlaybackClock(new PlaybackClock(Util.getDouble(tokenMap, "time"), playerState.statusSeen, Util.getDouble(tokenMap, "rate")))) {
+            changes |= PlayerState.CHANGED_SONG_TIME;
+        }
+        // Not skipped if unchanged, as the volume is also set locally when it's adjusted
+        if (playerState.setCurrentVolume(Util.getInt(tokenMap, "mixer volume"))) {
+            changes |= PlayerState.CHANGED_VOLUME;
+        }
+        if (changed(previous, tokenMap, "sync_master") && playerState.setSyncMaster(Util.getString(tokenMap, "sync_master"))) {
+            changes |= PlayerState.CHANGED_SYNC;
+        }
+        if (changed(previous, tokenMap, "sync_slaves") && playerState.setSyncSlaves(parseSyncSlaves(Util.getStringOrEmpty(tokenMap, "sync_slaves")))) {
+            changes |= PlayerState.CHANGED_SYNC;
+        }
+        if (changed(previous, tokenMap, "mode") && updatePlayStatus(playerState, Util.getString(tokenMap, "mode"))) {
+            changes |= PlayerState.CHANGED_PLAY_STATUS;
         }
 
-        // Shuffle status.
-        if (changedShuffleStatus) {
-            mEventBus.post(new ShuffleStatusChanged(player, playerState.getShuffleStatus()));
+        if (changes != 0) {
+            postStatusChanges(player, changes);
         }
+        return changes;
+    }
 
-        // Repeat status.
-        if (changedRepeatStatus) {
-            mEventBus.post(new RepeatStatusChanged(player, playerState.getRepeatStatus()));
+    /**
+     * @return The fields of the supplied status which {@link #parseStatus(Player, Map, Map)}
+     *     compares with the next status
+     */
+    private static Map<String, Object> comparedStatusFields(Map<String, Object> tokenMap) {
+        Map<String, Object> fields = new HashMap<>(COMPARED_STATUS_FIELDS.length * 2);
+        for (String key : COMPARED_STATUS_FIELDS) {
+            Object value = tokenMap.get(key);
+            if (value != null) {
+                fields.put(key, value);
+            }
         }
+        return fields;
+    }
 
-        // Position in song
-        if (changedSongDuration || changedSongTime || changedPlayStatus) {
-            postSongTimeChanged(player);
+    /**
+     * @return True if the supplied field differs between the supplied statuses, or there is no
+     *     previous status
+     */
+    private static boolean changed(@Nullable Map<String, Object> previous, Map<String, Object> current, String key) {
+        return previous == null || !Objects.equals(previous.get(key), current.get(key));
+    }
+
+    private static List<String> parseSyncSlaves(String syncSlaves) {
+        if (syncSlaves.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String slave : syncSlaves.split(",")) {
+            if (!slave.isEmpty()) {
+                result.add(slave);
+            }
         }
+        return result;
     }
 
-    protected void postSongTimeChanged(Player player) {
-        mEventBus.post(player.getTrackElapsed());
+    /**
+     * Create the current song of a player status.
+     *
+     * @param songRecord The record of the current song, or null to create it from the status
+     * @param tokenMap The player status
+     */
+    protected abstract CurrentPlaylistItem createCurrentSong(@Nullable Map<String, Object> songRecord, Map<String, Object> tokenMap);
+
+    /**
+     * Post a {@link PlayerStatusDelta} for the supplied changes, and the individual events for
+     * them.
+     */
+    protected void postStatusChanges(Player player, int changes) {
+        PlayerStatusDelta delta = new PlayerStatusDelta(player, changes);
+        mEventBus.post(delta);
+        mLegacyStatusEvents.post(delta);
     }
 
     protected void postPlayerStateChanged(Player player) {
@@ -186,20 +314,46 @@ abstract class BaseClient implements SlimClient {
     protected static class BrowseRequest<T> extends SlimCommand {
         private final Player player;
         private final boolean fullList;
+        private final int pageSize;
         private int start;
         private int itemsPerResponse;
         private final IServiceItemListCallback<T> callback;
 
-        BrowseRequest(Player player, String[] cmd, Map<String, Object> params, int start, int itemsPerResponse, IServiceItemListCallback<T> callback) {
+        /** Pages delivered from the cache by start, which the response from the server revalidates */
+        @Nullable
+        private Map<Integer, String> cachedPages;
+
+        /** The fetch this is a range of, or null */
+        @Nullable
+        private final FullListFetch<T> fetch;
+
+        BrowseRequest(Player player, String[] cmd, Map<String, Object> params, int start, int pageSize, IServiceItemListCallback<T> callback) {
             this.player = player;
             this.cmd(cmd);
             this.fullList = (start < 0);
             this.start = (fullList ? 0 : start);
-            this.itemsPerResponse = itemsPerResponse;
+            this.pageSize = pageSize;
+            this.itemsPerResponse = pageSize;
             this.callback = callback;
+            this.fetch = null;
             if (params != null) this.params(params);
         }
 
+        /**
+         * Create a request for a range of a full list.
+         */
+        private BrowseRequest(BrowseRequest<T> fullList, FullListFetch<T> fetch, int start, int itemsPerResponse) {
+            this.player = fullList.player;
+            this.cmd(fullList.cmd);
+            this.fullList = true;
+            this.start = start;
+            this.pageSize = fullList.pageSize;
+            this.itemsPerResponse = itemsPerResponse;
+            this.callback = fullList.callback;
+            this.fetch = fetch;
+            this.params(fullList.params);
+        }
+
         public BrowseRequest update(int start, int itemsPerResponse) {
             this.start = start;
             this.itemsPerResponse = itemsPerResponse;
@@ -222,8 +376,55 @@ abstract class BaseClient implements SlimClient {
             return itemsPerResponse;
         }
 
+        /**
+         * @return The number of items in a page of the caller
+         */
+        int getPageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return The command terms and menu parameters, which identify the command for
+         *     {@link PageSizeTuner}
+         */
+        String getCommand() {
+            return PageSizeTuner.command(cmd, params);
+        }
+
         public IServiceItemListCallback<T> getCallback() {
             return callback;
         }
+
+        /**
+         * @return The fetch this is a range of, or null if this isn't a range of a full list
+         */
+        @Nullable
+        FullListFetch<T> getFetch() {
+            return fetch;
+        }
+
+        void putCachedPage(int pageStart, String page) {
+            if (cachedPages == null) {
+                cachedPages = new TreeMap<>();
+            }
+            cachedPages.put(pageStart, page);
+        }
+
+        /**
+         * @return The pages delivered from the cache for the current range, and forget them
+         */
+        @Nullable
+        Map<Integer, String> takeCachedPages() {
+            Map<Integer, String> pages = cachedPages;
+            cachedPages = null;
+            return pages;
+        }
+
+        /**
+         * @return A key which is equal for requests which would send the same request to the server
+         */
+        String getKey() {
+            return (player != null ? player.getId() : "") + " " + cmd + " " + new TreeMap<>(params) + " " + start + " " + itemsPerResponse;
+        }
     }
 }
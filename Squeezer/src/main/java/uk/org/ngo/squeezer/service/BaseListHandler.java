@@ -1,5 +1,6 @@
 package uk.org.ngo.squeezer.service;
 
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment.InstantiationException;
 
 import java.lang.reflect.Constructor;
@@ -7,6 +8,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import uk.org.ngo.squeezer.model.ActionTemplates;
+import uk.org.ngo.squeezer.model.ItemFactories;
+import uk.org.ngo.squeezer.model.ItemFactory;
 import uk.org.ngo.squeezer.util.Reflection;
 
 /**
@@ -24,7 +28,7 @@ abstract class BaseListHandler<T> implements ListHandler<T> {
     private final Class<T> dataType = (Class<T>) Reflection
             .getGenericClass(this.getClass(), ListHandler.class, 0);
 
-    private Constructor<T> constructor;
+    private ItemFactory<T> factory;
 
     @Override
     public Class<T> getDataType() {
@@ -45,19 +49,43 @@ abstract class BaseListHandler<T> implements ListHandler<T> {
 
     @Override
     public void add(Map<String, Object> record) {
-        if (constructor == null) {
-            try {
-                constructor = dataType.getDeclaredConstructor(Map.class);
-            } catch (Exception e) {
-                throw new InstantiationException(
-                        "Unable to create constructor for " + dataType.getName(), e);
+        add(record, null);
+    }
+
+    /**
+     * Like {@link #add(Map)}, for a record of a page with a base record.
+     *
+     * @param templates The action templates of the base record, created once for the page
+     */
+    public void add(Map<String, Object> record, @Nullable ActionTemplates templates) {
+        if (factory == null) {
+            factory = ItemFactories.get(dataType);
+            if (factory == null) {
+                factory = reflectiveFactory(dataType);
             }
         }
+        items.add(factory.create(record, templates));
+    }
+
+    /**
+     * @return A factory which calls the record constructor of the supplied type through
+     *     reflection, for types without a registered factory.
+     */
+    private static <T> ItemFactory<T> reflectiveFactory(Class<T> dataType) {
+        Constructor<T> constructor;
         try {
-            items.add(constructor.newInstance(record));
+            constructor = dataType.getDeclaredConstructor(Map.class);
         } catch (Exception e) {
-            throw new InstantiationException("Unable to create new " + dataType.getName(), e);
+            throw new InstantiationException(
+                    "Unable to create constructor for " + dataType.getName(), e);
         }
+        return record -> {
+            try {
+                return constructor.newInstance(record);
+            } catch (Exception e) {
+                throw new InstantiationException("Unable to create new " + dataType.getName(), e);
+            }
+        };
     }
 
 }
@@ -0,0 +1,134 @@
+package uk.org.ngo.squeezer.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.org.ngo.squeezer.BuildConfig;
+import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.util.DiskLruCache;
+import uk.org.ngo.squeezer.util.ImageCache;
+
+/**
+ * Persistent cache of the responses to browse requests, so pages of library menus can be shown
+ * before the server responds.
+ * <p>
+ * Each response is stored with the scan state of the server it was received in. A response from
+ * a different scan state is never returned, so the cache is invalidated when the library is
+ * rescanned. Responses returned from the cache must still be revalidated against the server.
+ * <p>
+ * Responses are stored by page, see {@link #pages(Map, int, int, String, String)}.
+ * <p>
+ * This does disk access, so it must not be used on the main thread.
+ */
+class BrowseCache {
+    private static final String TAG = BrowseCache.class.getSimpleName();
+
+    private static final int SCAN_STATE_INDEX = 0;
+    private static final int RESPONSE_INDEX = 1;
+
+    private static final long MAX_SIZE = 8 * 1024 * 1024;
+
+    @NonNull
+    private final DiskLruCache mDiskLruCache;
+
+    private BrowseCache(@NonNull DiskLruCache diskLruCache) {
+        mDiskLruCache = diskLruCache;
+    }
+
+    /**
+     * @return A cache in the supplied directory, or null if it can't be opened
+     */
+    @Nullable
+    static BrowseCache open(File directory) {
+        try {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            return new BrowseCache(DiskLruCache.open(directory, 1, 2, MAX_SIZE));
+        } catch (IOException e) {
+            Log.w(TAG, "Can't open browse cache in " + directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param key Identifies the request
+     * @param scanState Scan state of the server
+     *
+     * @return The response stored for the request in the supplied scan state, or null
+     */
+    @Nullable
+    synchronized String get(String key, String scanState) {
+        try (DiskLruCache.Snapshot snapshot = mDiskLruCache.get(ImageCache.hashKeyForDisk(key))) {
+            if (snapshot != null && scanState.equals(snapshot.getString(SCAN_STATE_INDEX))) {
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Browse cache hit: " + key);
+                }
+                return snapshot.getString(RESPONSE_INDEX);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "get(" + key + "): " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Split a response into pages, as they are stored in the cache. Only whole pages are returned,
+     * so a chunk of a page is not stored. The last page of the list may be shorter.
+     * <p>
+     * The fields of a page are serialized in a fixed order, so a page is serialized the same
+     * whether it was received alone or in a larger response, and an unchanged page can be
+     * recognized by comparing the JSON.
+     *
+     * @param data The response
+     * @param start Position of the first item of the response
+     * @param pageSize Number of items in a page
+     *
+     * @return The pages of the response as JSON, by start
+     */
+    static Map<Integer, String> pages(Map<String, Object> data, int start, int pageSize, String countName, String itemLoopName) {
+        Map<Integer, String> pages = new TreeMap<>();
+        Object[] itemData = (Object[]) data.get(itemLoopName);
+        if (itemData == null || start % pageSize != 0) {
+            return pages;
+        }
+
+        int count = Util.getInt(data, countName);
+        int end = start + itemData.length;
+        for (int page = start; page < end && (page + pageSize <= end || end == count); page += pageSize) {
+            int pageEnd = Math.min(page + pageSize, end);
+            Map<String, Object> pageData = new TreeMap<>(data);
+            if (page != start || pageEnd != end) {
+                pageData.put(itemLoopName, Arrays.copyOfRange(itemData, page - start, pageEnd - start));
+            }
+            pages.put(page, JSON.toString(pageData));
+        }
+        return pages;
+    }
+
+    /**
+     * Store the response to a request, replacing any previous response.
+     */
+    synchronized void put(String key, String scanState, String response) {
+        try {
+            DiskLruCache.Editor editor = mDiskLruCache.edit(ImageCache.hashKeyForDisk(key));
+            if (editor != null) {
+                editor.set(SCAN_STATE_INDEX, scanState);
+                editor.set(RESPONSE_INDEX, response);
+                editor.commit();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "put(" + key + "): " + e);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package uk.org.ngo.squeezer.service;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -33,7 +34,10 @@ import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.ajax.JSON;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
 import java.net.URI;
@@ -42,14 +46,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import de.greenrobot.event.EventBus;
+import uk.org.ngo.squeezer.BuildConfig;
 import uk.org.ngo.squeezer.Preferences;
 import uk.org.ngo.squeezer.Util;
+import uk.org.ngo.squeezer.model.ActionTemplates;
 import uk.org.ngo.squeezer.model.AlertWindow;
 import uk.org.ngo.squeezer.model.DisplayMessage;
 import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
@@ -69,8 +85,11 @@ import uk.org.ngo.squeezer.model.MenuStatusMessage;
 import uk.org.ngo.squeezer.service.event.PlayerVolume;
 import uk.org.ngo.squeezer.service.event.RegisterSqueezeNetwork;
 import uk.org.ngo.squeezer.util.FluentHashMap;
+import uk.org.ngo.squeezer.util.HashedWheelTimer;
+import uk.org.ngo.squeezer.util.PageCache;
 import uk.org.ngo.squeezer.util.Reflection;
 import uk.org.ngo.squeezer.util.SendWakeOnLan;
+import uk.org.ngo.squeezer.util.StringPool;
 
 class CometClient extends BaseClient {
     private static final String TAG = CometClient.class.getSimpleName();
@@ -102,6 +121,34 @@ class CometClient extends BaseClient {
     /** The format string for the channel to listen to for menu status events. */
     private static final String CHANNEL_MENU_STATUS_FORMAT = "/%s/slim/menustatus/%s";
 
+    /**
+     * Time in milliseconds to wait for more messages to publish, before sending all pending
+     * messages in a single bayeux batch.
+     */
+    private static final long PUBLISH_BATCH_WINDOW = 10;
+
+    /**
+     * Maximum number of bulk requests which are published but not yet answered. Interactive
+     * requests are never held back, so at most this many bulk requests are ahead of them at the
+     * server.
+     */
+    private static final int MAX_BULK_IN_FLIGHT = 3;
+
+    /**
+     * Minimum time in milliseconds between publishing two requests of the same idempotent setter
+     * for the same player. See {@link Request#setter()}.
+     */
+    private static final Map<String, Long> SETTER_MIN_INTERVALS = new FluentHashMap<String, Long>()
+            .with("mixer volume", 100L)
+            .with("time", 200L)
+            .with("playerpref", 0L);
+
+    /** Time in milliseconds after which a request is given up, if no response has arrived. */
+    private static final long REQUEST_TIMEOUT = 60_000;
+
+    /** How long an action waits for a requested player status, see {@link #requestPlayerStatus(Player, Runnable)}. */
+    private static final long PLAYER_STATUS_WAIT = 5_000;
+
     // Maximum time to wait for replies for server capabilities
     private static final long HANDSHAKE_TIMEOUT = 4_000;
 
@@ -127,13 +174,101 @@ class CometClient extends BaseClient {
     private final Map<String, Request> mPendingRequests
             = new ConcurrentHashMap<>();
 
-    private final Map<String, BrowseRequest<?>> mPendingBrowseRequests = new ConcurrentHashMap<>();
+    /**
+     * Browse requests waiting for the response on a response channel. Identical requests share
+     * one server request, see {@link #internalRequestItems(BrowseRequest)}. Guarded by itself.
+     */
+    private final Map<String, List<BrowseRequest<?>>> mPendingBrowseRequests = new HashMap<>();
+
+    /**
+     * Response channel of the server request for each browse request key in flight, see
+     * {@link BrowseRequest#getKey()}. Guarded by {@link #mPendingBrowseRequests}.
+     */
+    private final Map<String, String> mInFlightBrowseChannels = new HashMap<>();
+
+    /** Number of browse requests which were answered by a server request already in flight. */
+    private final AtomicInteger mSharedBrowseRequests = new AtomicInteger();
+
+    /** Responses to library browse requests, see {@link #browseCacheKey(BrowseRequest, ItemListener)}. */
+    @Nullable
+    private volatile BrowseCache mBrowseCache;
+
+    /** Scan state of the library of the server, or null while it is being scanned. */
+    @Nullable
+    private volatile String mScanState;
+
+    /**
+     * Evicts entries from {@link #mPendingRequests} and {@link #mPendingBrowseRequests} without a
+     * response. It is stopped on disconnect, and replaced by a new timer for the next connection.
+     * Guarded by {@link #mRequestTimerLock}.
+     */
+    private HashedWheelTimer mRequestTimer = newRequestTimer();
+    private final Object mRequestTimerLock = new Object();
+
+    /** Number of requests which did not receive a response within {@link #REQUEST_TIMEOUT}. */
+    private final AtomicInteger mTimedOutRequests = new AtomicInteger();
 
     private final PublishListener mPublishListener = new PublishListener();
 
+    /** Actions waiting for the next status of a player, by player id. Guarded by itself. */
+    private final Map<String, List<Runnable>> mPlayerStatusWaiters = new HashMap<>();
+
+    /** Lock for the publish lanes and the fields guarded by it. */
+    private final Object mPublishLock = new Object();
+
+    /** Lane for commands and subscriptions, which are always published in the next batch. */
+    private final PublishLane mInteractiveLane = new PublishLane("interactive");
+
+    /** Lane for browse requests, see {@link #MAX_BULK_IN_FLIGHT}. */
+    private final PublishLane mBulkLane = new PublishLane("bulk");
+
+    /** Number of published bulk requests we are waiting for a response to. Guarded by {@link #mPublishLock}. */
+    private int mBulkInFlight;
+
+    /**
+     * Counts the bayeux sessions, so a bulk request published in a previous session doesn't release
+     * a slot of {@link #mBulkInFlight}. Guarded by {@link #mPublishLock}.
+     */
+    private int mPublishSession;
+
+    /**
+     * Idempotent setters queued in {@link #mInteractiveLane}, by setter key. Only the latest request
+     * for a key is kept. Guarded by {@link #mPublishLock}.
+     */
+    private final Map<String, PublishMessage> mPendingSetters = new HashMap<>();
+
+    /** Time we last published a setter, by setter key. Guarded by {@link #mPublishLock}. */
+    private final Map<String, Long> mSetterPublishTimes = new HashMap<>();
+
+    /** Number of setter requests replaced by a later one before they were published. */
+    private long mCoalescedSetters;
+
+    /**
+     * Uptime of the earliest pending {@link #MSG_PUBLISH}, or {@link Long#MAX_VALUE} if none is
+     * pending. Guarded by {@link #mPublishLock}.
+     */
+    private long mPublishScheduledAt = Long.MAX_VALUE;
+
+    /** Batch size statistics, only updated from the handler thread. */
+    private long mPublishBatches;
+    private long mPublishedMessages;
+    private int mMaxPublishBatchSize;
+
     // All requests are tagged with a correlation id, which can be used when
     // asynchronous responses are received.
-    private volatile int mCorrelationId = 0;
+    private final AtomicInteger mCorrelationId = new AtomicInteger();
+
+    /** Channel names of the current bayeux session, see {@link #sessionChannels()}. */
+    private volatile SessionChannels mSessionChannels;
+
+    /** Commands with a pre-serialized template, see {@link #command(Player, String[], Map)}. */
+    private static final CommandTemplate[] COMMAND_TEMPLATES = {
+            new CommandTemplate("mixer", "volume"),
+            new CommandTemplate("playlist", "index"),
+    };
+
+    /** Pre-serialized status requests, by the value of the subscribe parameter ("" if none). */
+    private final Map<String, JSON.Literal> mStatusTemplates = new ConcurrentHashMap<>();
 
     CometClient(@NonNull EventBus eventBus) {
         super(eventBus);
@@ -225,6 +360,10 @@ class CometClient extends BaseClient {
             CometClient.this.username.set(username);
             CometClient.this.password.set(password);
 
+            if (mBrowseCache == null) {
+                mBrowseCache = BrowseCache.open(new File(service.getCacheDir(), "browse"));
+            }
+
             mUrlPrefix = "http://" + serverAddress.address();
             final String url = mUrlPrefix + "/cometd";
             try {
@@ -252,7 +391,10 @@ class CometClient extends BaseClient {
                 }
             });
 
-            ClientTransport clientTransport = new HttpStreamingTransport(url, null, httpClient) {
+            Map<String, Object> transportOptions = new HashMap<>();
+            transportOptions.put(HttpStreamingTransport.BYTE_DECODER_OPTION, true);
+            transportOptions.put(HttpStreamingTransport.COMPRESSION_OPTION, true);
+            ClientTransport clientTransport = new HttpStreamingTransport(url, transportOptions, httpClient) {
                 @Override
                 protected void customize(org.eclipse.jetty.client.api.Request request) {
                     if (!isSqueezeNetwork && username != null && password != null) {
@@ -326,6 +468,13 @@ class CometClient extends BaseClient {
             }
         }
 
+        // Responses to requests published in a previous session will not arrive
+        synchronized (mPublishLock) {
+            mBulkInFlight = 0;
+            mPublishSession++;
+            schedulePublish();
+        }
+
         if (rehandshake) {
             // Make sure we reorder subscriptions on rehandshake
             mConnectionState.getPlayers().values().stream().forEach(player -> player.getPlayerState().setSubscriptionType(PlayerState.PlayerSubscriptionType.NOTIFY_NONE));
@@ -336,6 +485,8 @@ class CometClient extends BaseClient {
     private void parseRequestResponse(ClientSessionChannel channel, Message message) {
         Request request = mPendingRequests.get(message.getChannel());
         if (request != null) {
+            request.timeout.cancel();
+            onBulkRequestDone(request);
             request.callback.onResponse(request.player, request, message);
             mPendingRequests.remove(message.getChannel());
         }
@@ -349,6 +500,12 @@ class CometClient extends BaseClient {
         boolean firstTimePlayersReceived = (getConnectionState().getServerVersion() == null);
 
         getConnectionState().setMediaDirs(Util.getStringArray(data, ConnectionState.MEDIA_DIRS));
+        String scanState = (Util.getInt(data, "rescan") == 1) ? null : Util.getString(data, "lastscan");
+        if (!TextUtils.equals(scanState, mScanState)) {
+            // Library menus in the page cache may have changed
+            PageCache.getInstance().clear();
+        }
+        mScanState = scanState;
         getConnectionState().setServerVersion((String) data.get("version"));
         Object[] item_data = (Object[]) data.get("players_loop");
         final HashMap<String, Player> players = new HashMap<>();
@@ -394,32 +551,42 @@ class CometClient extends BaseClient {
 
         Map<String, Object> messageData = message.getDataAsMap();
 
-        CurrentPlaylistItem currentSong = null;
+        Map<String, Object> songRecord = null;
         Object[] item_data = (Object[]) messageData.get("item_loop");
         if (item_data != null && item_data.length > 0) {
-            Map<String, Object> record = (Map<String, Object>) item_data[0];
+            songRecord = (Map<String, Object>) item_data[0];
+        }
+        parseStatus(player, songRecord, messageData);
 
-            patchUrlPrefix(record);
-            record.put("base", messageData.get("base"));
-            currentSong = new CurrentPlaylistItem(record);
-            record.remove("base");
+        List<Runnable> waiters;
+        synchronized (mPlayerStatusWaiters) {
+            waiters = mPlayerStatusWaiters.remove(playerId);
+        }
+        if (waiters != null) {
+            for (Runnable waiter : waiters) {
+                waiter.run();
+            }
         }
-        parseStatus(player, currentSong, messageData);
     }
 
     @Override
-    protected void postSongTimeChanged(Player player) {
-        super.postSongTimeChanged(player);
-        if (player.getPlayerState().isPlaying()) {
-            mBackgroundHandler.removeMessages(MSG_TIME_UPDATE);
-            mBackgroundHandler.sendEmptyMessageDelayed(MSG_TIME_UPDATE, 1000);
+    protected CurrentPlaylistItem createCurrentSong(@Nullable Map<String, Object> songRecord, Map<String, Object> messageData) {
+        if (songRecord == null) {
+            return new CurrentPlaylistItem(messageData);
         }
+
+        patchUrlPrefix(songRecord);
+        songRecord.put("base", messageData.get("base"));
+        CurrentPlaylistItem currentSong = new CurrentPlaylistItem(songRecord);
+        songRecord.remove("base");
+        return currentSong;
     }
 
     @Override
-    protected void postPlayerStateChanged(Player player) {
-        super.postPlayerStateChanged(player);
-        if (player.getPlayerState().getSleepDuration() > 0) {
+    protected void postStatusChanges(Player player, int changes) {
+        super.postStatusChanges(player, changes);
+        // Refresh the sleep countdown every second while sleep is set
+        if ((changes & PlayerState.CHANGED_SLEEP) != 0 && player.getPlayerState().getSleepDuration() > 0) {
             android.os.Message message = mBackgroundHandler.obtainMessage(MSG_STATE_UPDATE, player);
             mBackgroundHandler.removeMessages(MSG_STATE_UPDATE);
             mBackgroundHandler.sendMessageDelayed(message, 1000);
@@ -463,9 +630,18 @@ class CometClient extends BaseClient {
     }
 
     /**
-     * Add endpoint to fetch further info from a slimserver item
+     * Share the strings of a received item with other items, and add endpoint to fetch further
+     * info from it
      */
     private void patchUrlPrefix(Map<String, Object> record) {
+        StringPool.getDefault().internValues(record);
+        setUrlPrefix(record);
+    }
+
+    /**
+     * Add endpoint to fetch further info from a slimserver item
+     */
+    private void setUrlPrefix(Map<String, Object> record) {
         record.put("urlPrefix", mUrlPrefix);
         Map<String, Object> window = (Map<String, Object>) record.get("window");
         if (window != null) {
@@ -494,20 +670,20 @@ class CometClient extends BaseClient {
     }
 
     private abstract class ItemListener<T> extends BaseListHandler<T> implements ResponseHandler {
-        void parseMessage(String countName, String itemLoopName, Message message) {
-            @SuppressWarnings("unchecked")
-            BrowseRequest<T> browseRequest = (BrowseRequest<T>) mPendingBrowseRequests.get(message.getChannel());
-            if (browseRequest == null) {
-                return;
-            }
-
-            mPendingBrowseRequests.remove(message.getChannel());
+        /**
+         * Create the items of a response in this list handler.
+         *
+         * @return The total number of items
+         */
+        int parseItems(String countName, String itemLoopName, Map<String, Object> data) {
             clear();
-            Map<String, Object> data = message.getDataAsMap();
             int count = Util.getInt(data.get(countName));
             Map<String, Object> baseRecord = (Map<String, Object>) data.get("base");
+            ActionTemplates templates = null;
             if (baseRecord != null) {
                 patchUrlPrefix(baseRecord);
+                // Prepared once, and shared by the items of the response
+                templates = new ActionTemplates(baseRecord);
             }
             Object[] item_data = (Object[]) data.get(itemLoopName);
             if (item_data != null) {
@@ -515,30 +691,137 @@ class CometClient extends BaseClient {
                     Map<String, Object> record = (Map<String, Object>) item_d;
                     patchUrlPrefix(record);
                     if (baseRecord != null) record.put("base", baseRecord);
-                    add(record);
+                    add(record, templates);
                     record.remove("base");
                 }
             }
 
+            // The items of the response have already been patched
+            setUrlPrefix(data);
+
+            return count;
+        }
+
+        /**
+         * Deliver a page from the cache to the supplied request, before the request is sent to the
+         * server.
+         */
+        void deliverCached(BrowseRequest<T> browseRequest, int pageStart, String page, String countName, String itemLoopName) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> data = (Map<String, Object>) JSON.parse(page);
+            int count = parseItems(countName, itemLoopName, data);
+            browseRequest.putCachedPage(pageStart, page);
+            browseRequest.getCallback().onItemsReceived(count, pageStart, data, getItems(), getDataType());
+        }
+
+        void parseMessage(String countName, String itemLoopName, Message message) {
+            List<BrowseRequest<?>> browseRequests = removePendingBrowseRequests(message.getChannel());
+            if (browseRequests == null) {
+                return;
+            }
+
+            Map<String, Object> data = message.getDataAsMap();
+
+            // Serialize the pages of the response as received, before the records are patched
+            String cacheKey = browseCacheKey(browseRequests.get(0), this);
+            Map<Integer, String> pages = null;
+            Map<Integer, String> changedPages = null;
+            if (cacheKey != null) {
+                BrowseRequest<?> browseRequest = browseRequests.get(0);
+                pages = BrowseCache.pages(data, browseRequest.getStart(), browseRequest.getPageSize(), countName, itemLoopName);
+                changedPages = new TreeMap<>(pages);
+            }
+
+            // Adapt the size of the following responses to the command. The request is only removed
+            // from mPendingRequests after this returns.
+            Request request = mPendingRequests.get(message.getChannel());
+            if (request != null && request.published > 0) {
+                BrowseRequest<?> browseRequest = browseRequests.get(0);
+                Object[] itemData = (Object[]) data.get(itemLoopName);
+                int received = (itemData != null ? itemData.length : 0);
+                mPageSizeTuner.onResponse(browseRequest.getCommand(), browseRequest.getItemsPerResponse(), received,
+                        SystemClock.uptimeMillis() - request.published, bytesPerItem(itemData, pages, browseRequest.getPageSize()));
+            }
+
+            int count = parseItems(countName, itemLoopName, data);
+
             // Process the lists for all the registered handlers
-            final boolean fullList = browseRequest.isFullList();
-            final int start = browseRequest.getStart();
-            final int end = start + getItems().size();
-            int max = 0;
-            patchUrlPrefix(data);
-            browseRequest.getCallback().onItemsReceived(count, start, data, getItems(), getDataType());
-            if (count > max) {
-                max = count;
+            for (int i = 0; i < browseRequests.size(); i++) {
+                @SuppressWarnings("unchecked")
+                BrowseRequest<T> browseRequest = (BrowseRequest<T>) browseRequests.get(i);
+                final boolean fullList = browseRequest.isFullList();
+                final int start = browseRequest.getStart();
+                final int end = start + getItems().size();
+                int max = 0;
+                // Each handler gets its own list, in case it modifies it
+                List<T> items = (i == 0) ? getItems() : new ArrayList<>(getItems());
+
+                // Ranges of a full list are delivered by their fetch, which also orders more items
+                FullListFetch<T> fetch = browseRequest.getFetch();
+                if (fetch != null) {
+                    fetch.onItemsReceived(start, count, data, items, getDataType());
+                    continue;
+                }
+
+                // Handlers which already got the pages of this response from the cache are not
+                // updated again
+                Map<Integer, String> cachedPages = browseRequest.takeCachedPages();
+                if (cachedPages == null || !cachedPages.equals(pages)) {
+                    browseRequest.getCallback().onItemsReceived(count, start, data, items, getDataType());
+                }
+                if (cachedPages != null && changedPages != null) {
+                    changedPages.entrySet().removeIf(page -> page.getValue().equals(cachedPages.get(page.getKey())));
+                }
+                if (count > max) {
+                    max = count;
+                }
+
+                // Check if we need to order more items. Handlers which shared this request will
+                // also share the follow-up requests.
+                if (fullList && end > start && end < max) {
+                    // Now we know the number of items, so request the rest of the list in parallel
+                    fetchFullList(browseRequest, end, max);
+                } else if (end % browseRequest.getPageSize() != 0 && end > start && end < max) {
+                    //XXX support prefix
+                    internalRequestItems(browseRequest.update(end, itemsPerResponse(browseRequest, end, max)));
+                }
             }
 
-            // Check if we need to order more items
-            if ((fullList || end % mPageSize != 0) && end < max) {
-                int itemsPerResponse = (end + mPageSize > max ? max - end : fullList ? mPageSize : mPageSize - browseRequest.getItemsPerResponse());
-                //XXX support prefix
-                internalRequestItems(browseRequest.update(end, itemsPerResponse));
+            // Store the pages which are not in the cache already, off the receive thread
+            String scanState = mScanState;
+            if (changedPages != null && !changedPages.isEmpty() && scanState != null) {
+                Map<Integer, String> storePages = changedPages;
+                mBackgroundHandler.post(() -> {
+                    for (Map.Entry<Integer, String> page : storePages.entrySet()) {
+                        mBrowseCache.put(cacheKey + " " + page.getKey(), scanState, page.getValue());
+                    }
+                });
             }
         }
 
+        /**
+         * @param itemData The item records of a response, as received
+         * @param pages The pages of the response serialized as JSON, or null if it wasn't serialized
+         *
+         * @return The average size of the items as JSON, or 0 if there are no items
+         */
+        private int bytesPerItem(@Nullable Object[] itemData, @Nullable Map<Integer, String> pages, int pageSize) {
+            if (itemData == null || itemData.length == 0) {
+                return 0;
+            }
+            if (pages != null && !pages.isEmpty()) {
+                // The pages start at the start of the response
+                int length = 0;
+                for (String page : pages.values()) {
+                    length += page.length();
+                }
+                return length / Math.min(itemData.length, pages.size() * pageSize);
+            }
+            // Serializing the whole response just for this is too expensive, so the first item is
+            // taken as typical
+            return JSON.toString(itemData[0]).length();
+        }
+
         void parseMessage(String itemLoopName, Message message) {
             parseMessage("count", itemLoopName, message);
         }
@@ -592,6 +875,118 @@ class CometClient extends BaseClient {
 
     public void onEvent(@SuppressWarnings("unused") HandshakeComplete event) {
         mBackgroundHandler.removeMessages(MSG_HANDSHAKE_TIMEOUT);
+        evictStaleRequests();
+    }
+
+    /**
+     * Fail the pending requests made in a previous bayeux session, since responses to them will
+     * never arrive.
+     */
+    private void evictStaleRequests() {
+        String clientId = (mBayeuxClient != null) ? mBayeuxClient.getId() : null;
+        if (clientId == null) {
+            return;
+        }
+        String prefix = "/" + clientId + "/";
+        failPendingRequests(responseChannel -> !responseChannel.startsWith(prefix),
+                new CancellationException("Session replaced by " + clientId));
+    }
+
+    /**
+     * Fail the pending requests with a response channel matching the supplied filter.
+     */
+    private void failPendingRequests(Predicate<String> filter, Throwable failure) {
+        Set<String> channels = new HashSet<>(mPendingRequests.keySet());
+        synchronized (mPendingBrowseRequests) {
+            channels.addAll(mPendingBrowseRequests.keySet());
+        }
+        for (String responseChannel : channels) {
+            if (filter.test(responseChannel)) {
+                failPendingRequest(responseChannel, failure);
+            }
+        }
+    }
+
+    private void onRequestTimeout(String responseChannel) {
+        if (failPendingRequest(responseChannel, new TimeoutException("No response on " + responseChannel))) {
+            Log.w(TAG, "Request timed out: " + responseChannel + " (" + mTimedOutRequests.incrementAndGet() + " timeouts)");
+        }
+    }
+
+    /**
+     * Remove the request for the supplied response channel, and notify the callback of a browse
+     * request that it failed. If the request has not been published yet it is dropped from its
+     * lane, so it's not published without anybody waiting for the response.
+     *
+     * @return True if a request was pending
+     */
+    private boolean failPendingRequest(String responseChannel, Throwable failure) {
+        synchronized (mPublishLock) {
+            mBulkLane.remove(responseChannel);
+            mInteractiveLane.remove(responseChannel);
+        }
+        Request request = removePendingRequest(responseChannel);
+        List<BrowseRequest<?>> browseRequests = removePendingBrowseRequests(responseChannel);
+        if (request != null) {
+            onBulkRequestDone(request);
+        }
+        if (browseRequests != null) {
+            for (BrowseRequest<?> browseRequest : browseRequests) {
+                FullListFetch<?> fetch = browseRequest.getFetch();
+                if (fetch != null) {
+                    fetch.onItemsFailed(browseRequest.getStart(), failure);
+                } else {
+                    browseRequest.getCallback().onItemsFailed(browseRequest.getStart(), failure);
+                }
+            }
+        }
+        return request != null || browseRequests != null;
+    }
+
+    /**
+     * Remove the browse requests waiting for a response on the supplied channel.
+     *
+     * @return The removed browse requests, or null if there are none
+     */
+    @Nullable
+    private List<BrowseRequest<?>> removePendingBrowseRequests(String responseChannel) {
+        synchronized (mPendingBrowseRequests) {
+            List<BrowseRequest<?>> browseRequests = mPendingBrowseRequests.remove(responseChannel);
+            if (browseRequests != null) {
+                mInFlightBrowseChannels.values().remove(responseChannel);
+            }
+            return browseRequests;
+        }
+    }
+
+    @Nullable
+    private Request removePendingRequest(String responseChannel) {
+        Request request = mPendingRequests.remove(responseChannel);
+        if (request != null) {
+            request.timeout.cancel();
+        }
+        return request;
+    }
+
+    private static HashedWheelTimer newRequestTimer() {
+        return new HashedWheelTimer("CometClient request timeout", 1_000, 64);
+    }
+
+    private HashedWheelTimer.Timeout newRequestTimeout(Runnable task, long delayMillis) {
+        synchronized (mRequestTimerLock) {
+            return mRequestTimer.newTimeout(task, delayMillis);
+        }
+    }
+
+    /**
+     * Stop the request timer and start a new one for the next connection. The pending requests
+     * must have been failed, since they won't time out anymore.
+     */
+    private void resetRequestTimer() {
+        synchronized (mRequestTimerLock) {
+            mRequestTimer.stop();
+            mRequestTimer = newRequestTimer();
+        }
     }
 
     @Override
@@ -611,9 +1006,42 @@ class CometClient extends BaseClient {
 
     @Override
     public void cancelClientRequests(Object client) {
-        for (Map.Entry<String, BrowseRequest<?>> entry : mPendingBrowseRequests.entrySet()) {
-            if (entry.getValue().getCallback().getClient() == client) {
-                mPendingBrowseRequests.remove(entry.getKey());
+        cancelBrowseRequests(browseRequest -> browseRequest.getCallback().getClient() == client);
+    }
+
+    @Override
+    public void cancelClientRequests(Object client, int start, int end) {
+        cancelBrowseRequests(browseRequest -> browseRequest.getCallback().getClient() == client
+                && browseRequest.getStart() >= start && browseRequest.getStart() < end);
+    }
+
+    /**
+     * Remove the browse requests matching the supplied filter, and drop requests nobody waits for
+     * anymore if they have not been published yet.
+     */
+    private void cancelBrowseRequests(Predicate<BrowseRequest<?>> filter) {
+        List<String> abandonedChannels = new ArrayList<>();
+        synchronized (mPendingBrowseRequests) {
+            for (Iterator<Map.Entry<String, List<BrowseRequest<?>>>> it = mPendingBrowseRequests.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, List<BrowseRequest<?>>> entry = it.next();
+                List<BrowseRequest<?>> browseRequests = entry.getValue();
+                browseRequests.removeIf(filter);
+                if (browseRequests.isEmpty()) {
+                    // Nobody waits for the response anymore, so let a new identical request go to the server
+                    it.remove();
+                    mInFlightBrowseChannels.values().remove(entry.getKey());
+                    abandonedChannels.add(entry.getKey());
+                }
+            }
+        }
+
+        if (!abandonedChannels.isEmpty()) {
+            synchronized (mPublishLock) {
+                for (String responseChannel : abandonedChannels) {
+                    if (mBulkLane.remove(responseChannel)) {
+                        removePendingRequest(responseChannel);
+                    }
+                }
             }
         }
     }
@@ -623,37 +1051,176 @@ class CometClient extends BaseClient {
     }
 
     private String exec(Request request) {
-        String responseChannel = String.format(CHANNEL_SLIM_REQUEST_RESPONSE_FORMAT, mBayeuxClient.getId(), mCorrelationId++);
-        if (request.callback != null) mPendingRequests.put(responseChannel, request);
+        String responseChannel = sessionChannels().requestResponsePrefix + mCorrelationId.getAndIncrement();
+        if (request.callback != null) {
+            request.timeout = newRequestTimeout(() -> onRequestTimeout(responseChannel), REQUEST_TIMEOUT);
+            mPendingRequests.put(responseChannel, request);
+        }
         publishMessage(request, CHANNEL_SLIM_REQUEST, responseChannel, null);
         return responseChannel;
     }
 
-    /** If request is null, this is an unsubscribe to the suplied response channel */
+    /**
+     * If request is null, this is an unsubscribe to the suplied response channel
+     * <p>
+     * Messages are queued, and all messages queued within {@link #PUBLISH_BATCH_WINDOW} of the
+     * first are published from the handler thread in a single bayeux batch, so they are sent to
+     * the server in one HTTP request.
+     * <p>
+     * Bulk requests (see {@link Request#bulk()}) are queued in a separate lane, and are only
+     * published while fewer than {@link #MAX_BULK_IN_FLIGHT} bulk requests are waiting for a
+     * response. Other messages are always published first in the next batch.
+     * <p>
+     * Idempotent setters (see {@link Request#setter()}) replace any unpublished request for the
+     * same setter and player at its position in the interactive lane, so commands are still
+     * published in the order they were issued. A setter is held back until
+     * {@link #SETTER_MIN_INTERVALS} has passed since the previous one was published, and so are
+     * the interactive messages queued after it.
+     */
     private void publishMessage(final Request request, final String channel, final String responseChannel, final PublishListener publishListener) {
-        // Make sure all requests are done in the handler thread
-        if (mBackgroundHandler.getLooper() == Looper.myLooper()) {
-            _publishMessage(request, channel, responseChannel, publishListener);
-        } else {
-            PublishMessage publishMessage = new PublishMessage(request, channel, responseChannel, publishListener);
-            android.os.Message message = mBackgroundHandler.obtainMessage(MSG_PUBLISH, publishMessage);
-            mBackgroundHandler.sendMessage(message);
+        PublishMessage publishMessage = new PublishMessage(request, channel, responseChannel, publishListener);
+        synchronized (mPublishLock) {
+            PublishMessage replaced = (publishMessage.setterKey != null)
+                    ? mPendingSetters.put(publishMessage.setterKey, publishMessage)
+                    : null;
+            if (replaced != null && mInteractiveLane.replace(replaced, publishMessage)) {
+                removePendingRequest(replaced.responseChannel);
+                mCoalescedSetters++;
+            } else {
+                (publishMessage.isBulk() ? mBulkLane : mInteractiveLane).add(publishMessage);
+            }
+            schedulePublish();
         }
+    }
+
+    /**
+     * Make sure a {@link #MSG_PUBLISH} is pending, if there are messages which can be published.
+     * Must be called with {@link #mPublishLock} held.
+     */
+    private void schedulePublish() {
+        long now = SystemClock.uptimeMillis();
+        long when = Long.MAX_VALUE;
+        PublishMessage next = mInteractiveLane.peek();
+        if (next != null) {
+            // A setter held back by its minimum interval also holds back the messages after it
+            when = Math.max(now + PUBLISH_BATCH_WINDOW, setterDueTime(next));
+        }
+        if (!mBulkLane.isEmpty() && mBulkInFlight < MAX_BULK_IN_FLIGHT) {
+            when = Math.min(when, now + PUBLISH_BATCH_WINDOW);
+        }
+        if (when < mPublishScheduledAt) {
+            mPublishScheduledAt = when;
+            mBackgroundHandler.sendMessageAtTime(mBackgroundHandler.obtainMessage(MSG_PUBLISH), when);
+        }
+    }
 
+    /**
+     * @return The earliest time the supplied message may be published, 0 if it isn't a setter.
+     * Must be called with {@link #mPublishLock} held.
+     */
+    private long setterDueTime(PublishMessage message) {
+        Long lastPublished = (message.setterKey != null) ? mSetterPublishTimes.get(message.setterKey) : null;
+        return (lastPublished != null) ? lastPublished + message.setterInterval : 0;
+    }
+
+    /**
+     * Called when a request is answered or failed. If it's a bulk request published in the current
+     * session, its slot is released to let the next one through.
+     */
+    private void onBulkRequestDone(Request request) {
+        if (!request.bulk) {
+            return;
+        }
+        synchronized (mPublishLock) {
+            if (request.published > 0 && request.publishSession == mPublishSession && mBulkInFlight > 0) {
+                mBulkInFlight--;
+            }
+            schedulePublish();
+        }
+    }
+
+    /** Publish queued messages in one batch. This may only be called from the handler thread */
+    private void publishQueuedMessages() {
+        final List<PublishMessage> messages = new ArrayList<>();
+        synchronized (mPublishLock) {
+            mPublishScheduledAt = Long.MAX_VALUE;
+            long now = SystemClock.uptimeMillis();
+            mInteractiveLane.drainTo(messages, Integer.MAX_VALUE, now, message -> setterDueTime(message) <= now);
+            for (PublishMessage message : messages) {
+                if (message.setterKey != null) {
+                    mPendingSetters.remove(message.setterKey);
+                    mSetterPublishTimes.put(message.setterKey, now);
+                }
+            }
+            int bulkMessages = mBulkLane.drainTo(messages, MAX_BULK_IN_FLIGHT - mBulkInFlight, now, message -> true);
+            for (int i = messages.size() - bulkMessages; i < messages.size(); i++) {
+                messages.get(i).request.published = now;
+                messages.get(i).request.publishSession = mPublishSession;
+            }
+            mBulkInFlight += bulkMessages;
+
+            // Setters may be held back by their minimum interval
+            schedulePublish();
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        mBayeuxClient.batch(() -> {
+            for (PublishMessage message : messages) {
+                _publishMessage(message.request, message.channel, message.responseChannel, message.publishListener);
+            }
+        });
+
+        mPublishBatches++;
+        mPublishedMessages += messages.size();
+        mMaxPublishBatchSize = Math.max(mMaxPublishBatchSize, messages.size());
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Published batch of " + messages.size() + " messages (batches: " + mPublishBatches
+                    + ", average size: " + (float) mPublishedMessages / mPublishBatches
+                    + ", max size: " + mMaxPublishBatchSize + ")");
+            Log.d(TAG, mInteractiveLane + ", " + mBulkLane + ", bulk in flight: " + mBulkInFlight
+                    + ", coalesced setters: " + mCoalescedSetters);
+        }
     }
 
     /** This may only be called from the handler thread */
     private void _publishMessage(Request request, String channel, String responseChannel, PublishListener publishListener) {
-        Map<String, Object> data = new HashMap<>();
-        if (request != null) {
-            data.put("request", request.slimRequest());
-            data.put("response", responseChannel);
-        } else {
-            data.put("unsubscribe", responseChannel);
+        // Serialized directly into the JSON of the bayeux message, see PublishData
+        PublishData data = new PublishData(request, responseChannel);
+        if (publishListener == null && request != null && request.callback != null) {
+            // The response will never arrive if the publish fails, so fail the request now. This
+            // also releases the slot of a bulk request.
+            publishListener = new PublishListener() {
+                @Override
+                public void onMessage(ClientSessionChannel channel, Message message) {
+                    super.onMessage(channel, message);
+                    if (!message.isSuccessful()) {
+                        failPendingRequest(responseChannel, new IllegalStateException("Publish failed: " + message.getJSON()));
+                    }
+                }
+            };
         }
         mBayeuxClient.getChannel(channel).publish(data, publishListener != null ? publishListener : this.mPublishListener);
     }
 
+    /**
+     * Pages of the library menus only change when the library is scanned, so they are cached per
+     * server and scan state, see {@link BrowseCache}. The result doesn't depend on the player, so
+     * it's not part of the key.
+     *
+     * @return The key of the list of the supplied request in the browse cache, or null if the
+     *     response to it is not cached. Pages of the list are stored with their start appended.
+     */
+    @Nullable
+    private String browseCacheKey(BrowseRequest<?> browseRequest, ItemListener<?> listener) {
+        if (mBrowseCache == null || browseRequest.isFullList() || !(listener instanceof JiveItemListener)
+                || !"browselibrary".equals(browseRequest.cmd.get(0))) {
+            return null;
+        }
+        return mUrlPrefix + " " + browseRequest.cmd + " " + new TreeMap<>(browseRequest.params) + " " + browseRequest.getPageSize();
+    }
+
     @Override
     protected  <T> void internalRequestItems(final BrowseRequest<T> browseRequest) {
         Class<?> callbackClass = Reflection.getGenericClass(browseRequest.getCallback().getClass(), IServiceItemListCallback.class, 0);
@@ -662,27 +1229,100 @@ class CometClient extends BaseClient {
             throw new RuntimeException("No handler defined for '" + browseRequest.getCallback().getClass() + "'");
         }
 
-        Request request = request(browseRequest.getPlayer(), listener, browseRequest.cmd())
-                .page(browseRequest.getStart(), browseRequest.getItemsPerResponse())
-                .params(browseRequest.params);
-        mPendingBrowseRequests.put(exec(request), browseRequest);
+        // Show the cached pages first, then revalidate them with the response from the server.
+        // Reading the cache and sending the request are done in order on the background thread, so
+        // the cached pages can't arrive after the response.
+        String cacheKey = browseCacheKey(browseRequest, listener);
+        String scanState = mScanState;
+        int start = browseRequest.getStart();
+        int pageSize = browseRequest.getPageSize();
+        if (cacheKey != null && scanState != null && start % pageSize == 0) {
+            mBackgroundHandler.post(() -> {
+                @SuppressWarnings("unchecked")
+                BrowseRequest<JiveItem> jiveItemRequest = (BrowseRequest<JiveItem>) (BrowseRequest<?>) browseRequest;
+                for (int page = start; page < start + browseRequest.getItemsPerResponse(); page += pageSize) {
+                    String response = mBrowseCache.get(cacheKey + " " + page, scanState);
+                    if (response == null) {
+                        break;
+                    }
+                    new JiveItemListener().deliverCached(jiveItemRequest, page, response, "count", "item_loop");
+                }
+                sendBrowseRequest(browseRequest, listener);
+            });
+            return;
+        }
+
+        sendBrowseRequest(browseRequest, listener);
+    }
+
+    private <T> void sendBrowseRequest(BrowseRequest<T> browseRequest, ItemListener<?> listener) {
+        // If an identical request is waiting for a response, share the response with that
+        String key = browseRequest.getKey();
+        synchronized (mPendingBrowseRequests) {
+            String responseChannel = mInFlightBrowseChannels.get(key);
+            if (responseChannel != null) {
+                mPendingBrowseRequests.get(responseChannel).add(browseRequest);
+                int shared = mSharedBrowseRequests.incrementAndGet();
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Sharing response on " + responseChannel + " for " + browseRequest + " (" + shared + " shared)");
+                }
+                return;
+            }
+
+            Request request = request(browseRequest.getPlayer(), listener, browseRequest.cmd())
+                    .page(browseRequest.getStart(), browseRequest.getItemsPerResponse())
+                    .params(browseRequest.params)
+                    .bulk();
+            responseChannel = exec(request);
+            List<BrowseRequest<?>> browseRequests = new ArrayList<>();
+            browseRequests.add(browseRequest);
+            mPendingBrowseRequests.put(responseChannel, browseRequests);
+            mInFlightBrowseChannels.put(key, responseChannel);
+        }
     }
 
     @Override
     public void command(Player player, String[] cmd, Map<String, Object> params) {
         ResponseHandler callback = mRequestMap.get(cmd[0]);
-        exec(request(player, callback, cmd).params(params));
+        Request request = request(player, callback, cmd).params(params);
+        if (params.isEmpty()) {
+            for (CommandTemplate template : COMMAND_TEMPLATES) {
+                if (template.matches(cmd)) {
+                    request.template(template.literal(cmd[cmd.length - 1]));
+                    break;
+                }
+            }
+        }
+        exec(request);
     }
 
     @Override
     public void requestPlayerStatus(Player player) {
-        Request request = statusRequest(player);
+        Request request = statusRequest(player, "");
         publishMessage(request, CHANNEL_SLIM_REQUEST, subscribeResponseChannel(player, CHANNEL_PLAYER_STATUS_FORMAT), null);
     }
 
+    @Override
+    public void requestPlayerStatus(Player player, Runnable onStatus) {
+        String playerId = player.getId();
+        synchronized (mPlayerStatusWaiters) {
+            mPlayerStatusWaiters.computeIfAbsent(playerId, id -> new ArrayList<>()).add(onStatus);
+        }
+        // Don't act on a status which arrives much later
+        newRequestTimeout(() -> {
+            synchronized (mPlayerStatusWaiters) {
+                List<Runnable> waiters = mPlayerStatusWaiters.get(playerId);
+                if (waiters != null && waiters.remove(onStatus) && waiters.isEmpty()) {
+                    mPlayerStatusWaiters.remove(playerId);
+                }
+            }
+        }, PLAYER_STATUS_WAIT);
+        requestPlayerStatus(player);
+    }
+
     @Override
     public void subscribePlayerStatus(final Player player, final PlayerState.PlayerSubscriptionType subscriptionType) {
-        Request request = statusRequest(player).param("subscribe", subscriptionType.getStatus());
+        Request request = statusRequest(player, subscriptionType.getStatus());
         publishMessage(request, CHANNEL_SLIM_SUBSCRIBE, subscribeResponseChannel(player, CHANNEL_PLAYER_STATUS_FORMAT), new PublishListener() {
             @Override
             public void onMessage(ClientSessionChannel channel, Message message) {
@@ -718,7 +1358,19 @@ class CometClient extends BaseClient {
     }
 
     private String subscribeResponseChannel(Player player, String format) {
-        return String.format(format, mBayeuxClient.getId(), player.getId());
+        return sessionChannels().playerChannel(format, player.getId());
+    }
+
+    /**
+     * @return The channel names for the current bayeux session
+     */
+    private SessionChannels sessionChannels() {
+        String clientId = mBayeuxClient.getId();
+        SessionChannels sessionChannels = mSessionChannels;
+        if (sessionChannels == null || !sessionChannels.clientId.equals(clientId)) {
+            mSessionChannels = sessionChannels = new SessionChannels(clientId);
+        }
+        return sessionChannels;
     }
 
     private static String getAdviceAction(Map<String, Object> advice) {
@@ -732,8 +1384,7 @@ class CometClient extends BaseClient {
     private static final int MSG_DISCONNECT = 2;
     private static final int MSG_HANDSHAKE_TIMEOUT = 3;
     private static final int MSG_SERVER_STATUS_TIMEOUT = 4;
-    private static final int MSG_TIME_UPDATE = 5;
-    private static final int MSG_STATE_UPDATE = 6;
+    private static final int MSG_STATE_UPDATE = 5;
     private class CliHandler extends Handler {
         CliHandler(Looper looper) {
             super(looper);
@@ -742,12 +1393,26 @@ class CometClient extends BaseClient {
         @Override
         public void handleMessage(android.os.Message msg) {
             switch (msg.what) {
-                case MSG_PUBLISH: {
-                    PublishMessage message = (PublishMessage) msg.obj;
-                    _publishMessage(message.request, message.channel, message.responseChannel, message.publishListener);
+                case MSG_PUBLISH:
+                    publishQueuedMessages();
                     break;
-                }
                 case MSG_DISCONNECT:
+                    // Send messages queued before the disconnect
+                    publishQueuedMessages();
+                    synchronized (mPlayerStatusWaiters) {
+                        mPlayerStatusWaiters.clear();
+                    }
+                    // Responses will not arrive, and there may never be a next session to evict
+                    // the requests
+                    failPendingRequests(responseChannel -> true, new CancellationException("Disconnected"));
+                    resetRequestTimer();
+                    if (BuildConfig.DEBUG) {
+                        if (mBayeuxClient.getTransport() instanceof HttpStreamingTransport) {
+                            HttpStreamingTransport transport = (HttpStreamingTransport) mBayeuxClient.getTransport();
+                            Log.d(TAG, "Bytes sent: " + transport.getBytesSent() + ", received: " + transport.getBytesReceived());
+                        }
+                        Log.d(TAG, "Strings: " + StringPool.getDefault());
+                    }
                     mBayeuxClient.disconnect();
                     break;
                 case MSG_HANDSHAKE_TIMEOUT:
@@ -758,16 +1423,9 @@ class CometClient extends BaseClient {
                     Log.w(TAG, "Server status timeout: initiate a new handshake");
                     mBayeuxClient.rehandshake();
                     break;
-                case MSG_TIME_UPDATE: {
-                    Player activePlayer = mConnectionState.getActivePlayer();
-                    if (activePlayer != null) {
-                        postSongTimeChanged(activePlayer);
-                    }
-                    break;
-                }
                 case MSG_STATE_UPDATE: {
                     Player player = (Player) msg.obj;
-                    postPlayerStateChanged(player);
+                    postStatusChanges(player, PlayerState.CHANGED_SLEEP);
                     break;
                 }
             }
@@ -782,12 +1440,27 @@ class CometClient extends BaseClient {
                 .prefs("playerprefs", Arrays.stream(Player.Pref.values()).map(Player.Pref::prefName).toArray(String[]::new));
     }
 
+    /**
+     * Status requests only differ by player and subscription, so the command part is serialized
+     * once for each subscription.
+     *
+     * @param subscribe Value of the subscribe parameter, or "" to not subscribe
+     */
     @NonNull
-    private Request statusRequest(Player player) {
-        return request(player, "status")
-                .currentSong()
-                .param("menu", "menu")
-                .param("useContextMenu", "1");
+    private Request statusRequest(Player player, String subscribe) {
+        JSON.Literal template = mStatusTemplates.get(subscribe);
+        if (template == null) {
+            Request request = request(player, "status")
+                    .currentSong()
+                    .param("menu", "menu")
+                    .param("useContextMenu", "1");
+            if (!subscribe.isEmpty()) {
+                request.param("subscribe", subscribe);
+            }
+            template = CommandTemplate.literal(request.slimCommand());
+            mStatusTemplates.put(subscribe, template);
+        }
+        return request(player, "status").template(template);
     }
 
     private Request request(Player player, ResponseHandler callback, String... cmd) {
@@ -810,6 +1483,17 @@ class CometClient extends BaseClient {
         private final ResponseHandler callback;
         private final Player player;
         private PagingParams page;
+        private boolean bulk;
+        private JSON.Literal template;
+
+        /** When a bulk request was published, in milliseconds of {@link SystemClock#uptimeMillis()}. */
+        private long published;
+
+        /** The session a bulk request was published in, see {@link #mPublishSession}. */
+        private int publishSession;
+
+        /** Evicts this request, if it is waiting for a response. */
+        private HashedWheelTimer.Timeout timeout;
 
         private Request(Player player, ResponseHandler callback, String... cmd) {
             this.player = player;
@@ -847,29 +1531,72 @@ class CometClient extends BaseClient {
             return this;
         }
 
+        /**
+         * If this request sets an absolute value which replaces the effect of any previous request
+         * of the same setter for the same player, return the name of the setter.
+         * <p>
+         * The value is the last command term. Queries ("?") and relative values ("+5") are not
+         * setters.
+         *
+         * @return The setter name, a key in {@link #SETTER_MIN_INTERVALS}, or null
+         */
+        @Nullable
+        private String setter() {
+            if (player == null || !params.isEmpty() || cmd.isEmpty()) {
+                return null;
+            }
+
+            String setter;
+            if (cmd.size() == 3 && "mixer".equals(cmd.get(0)) && "volume".equals(cmd.get(1))) {
+                setter = "mixer volume";
+            } else if (cmd.size() == 2 && "time".equals(cmd.get(0))) {
+                setter = "time";
+            } else if (cmd.size() == 3 && "playerpref".equals(cmd.get(0))) {
+                setter = "playerpref";
+            } else {
+                return null;
+            }
+
+            String value = cmd.get(cmd.size() - 1);
+            if (value.isEmpty() || value.equals("?") || value.startsWith("+") || value.startsWith("-")) {
+                return null;
+            }
+            return setter;
+        }
+
+        /**
+         * Mark this as a bulk request, which must not delay interactive requests.
+         * See {@link CometClient#publishMessage(Request, String, String, PublishListener)}
+         */
+        private Request bulk() {
+            bulk = true;
+            return this;
+        }
+
+        /**
+         * Use the supplied pre-serialized command instead of serializing the command terms,
+         * paging and parameters of this request. This is ignored if template is null.
+         */
+        private Request template(@Nullable JSON.Literal template) {
+            this.template = template;
+            return this;
+        }
+
         public String getRequest() {
             return TextUtils.join(" ", cmd);
         }
 
-        List<Object> slimRequest() {
-            List<Object> slimRequest = new ArrayList<>();
-
-            slimRequest.add(player == null ? "" : player.getId());
-            List<String> inner = new ArrayList<>();
-            slimRequest.add(inner);
-            inner.addAll(cmd);
-            for (Map.Entry<String, Object> parameter : params.entrySet()) {
-                if (parameter.getValue() == null) inner.add(parameter.getKey());
-            }
-            if (page != null) {
-                inner.add(page.start);
-                inner.add(page.page);
-            }
-            for (Map.Entry<String, Object> parameter : params.entrySet()) {
-                if (parameter.getValue() != null) inner.add(parameter.getKey() + ":" + parameter.getValue());
-            }
+        Object[] slimRequest() {
+            return new Object[]{player == null ? "" : player.getId(), template != null ? template : slimCommand()};
+        }
 
-            return slimRequest;
+        /**
+         * @return The command terms and parameters, see {@link CommandTemplate#slimCommand(List, Map, String, String)}
+         */
+        Object[] slimCommand() {
+            return (page != null)
+                    ? CommandTemplate.slimCommand(cmd, params, page.start, page.page)
+                    : CommandTemplate.slimCommand(cmd, params, null, null);
         }
     }
 
@@ -886,17 +1613,180 @@ class CometClient extends BaseClient {
         }
     }
 
+    /**
+     * Data of a message to the slim request, subscribe or unsubscribe channels.
+     * <p>
+     * This generates its own JSON when the bayeux client serializes the message, so we don't have
+     * to build a map for each message. If request is null, this is an unsubscribe from the
+     * response channel.
+     */
+    private static class PublishData implements JSON.Generator {
+        private final Request request;
+        private final String responseChannel;
+
+        private PublishData(Request request, String responseChannel) {
+            this.request = request;
+            this.responseChannel = responseChannel;
+        }
+
+        @Override
+        public void addJSON(Appendable buffer) {
+            JSON json = JSON.getDefault();
+            try {
+                if (request != null) {
+                    buffer.append("{\"request\":");
+                    json.append(buffer, request.slimRequest());
+                    buffer.append(",\"response\":");
+                } else {
+                    buffer.append("{\"unsubscribe\":");
+                }
+                json.append(buffer, responseChannel);
+                buffer.append('}');
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /** Channel names for a bayeux session, so we don't have to format them for each request. */
+    private static class SessionChannels {
+        private final String clientId;
+        private final String requestResponsePrefix;
+
+        /** Channel names by player id, for each of the player channel format strings */
+        private final Map<String, Map<String, String>> playerChannels = new ConcurrentHashMap<>();
+
+        private SessionChannels(String clientId) {
+            this.clientId = clientId;
+            requestResponsePrefix = String.format(CHANNEL_SLIM_REQUEST_RESPONSE_FORMAT, clientId, "");
+        }
+
+        private String playerChannel(String format, String playerId) {
+            Map<String, String> channels = playerChannels.computeIfAbsent(format, key -> new ConcurrentHashMap<>());
+            String channel = channels.get(playerId);
+            if (channel == null) {
+                channel = String.format(format, clientId, playerId);
+                channels.put(playerId, channel);
+            }
+            return channel;
+        }
+    }
+
     private static class PublishMessage {
         final Request request;
         final String channel;
         final String responseChannel;
         final PublishListener publishListener;
+        final long queueTime = SystemClock.uptimeMillis();
+
+        /** Identifies the setter and player if this is an idempotent setter, otherwise null */
+        final String setterKey;
+        final long setterInterval;
 
         private PublishMessage(Request request, String channel, String responseChannel, PublishListener publishListener) {
             this.request = request;
             this.channel = channel;
             this.responseChannel = responseChannel;
             this.publishListener = publishListener;
+
+            String setter = (request != null && publishListener == null) ? request.setter() : null;
+            if (setter != null) {
+                // The setter and its arguments, i.e. all command terms except the value
+                setterKey = request.player.getId() + " " + TextUtils.join(" ", request.cmd.subList(0, request.cmd.size() - 1));
+                setterInterval = SETTER_MIN_INTERVALS.get(setter);
+            } else {
+                setterKey = null;
+                setterInterval = 0;
+            }
+        }
+
+        boolean isBulk() {
+            return request != null && request.bulk;
+        }
+    }
+
+    /**
+     * Queue of messages waiting to be published, with queue depth and wait time statistics.
+     * Access must be guarded by {@link #mPublishLock}.
+     */
+    private static class PublishLane {
+        private final String name;
+        private final LinkedList<PublishMessage> queue = new LinkedList<>();
+        private long published;
+        private long totalWait;
+        private long maxWait;
+        private int maxDepth;
+
+        private PublishLane(String name) {
+            this.name = name;
+        }
+
+        void add(PublishMessage message) {
+            queue.add(message);
+            maxDepth = Math.max(maxDepth, queue.size());
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        /**
+         * @return The message which will be published next, or null if the lane is empty
+         */
+        @Nullable
+        PublishMessage peek() {
+            return queue.peek();
+        }
+
+        /**
+         * Put a message in the place of a queued one.
+         *
+         * @return True if the queued message was found and replaced
+         */
+        boolean replace(PublishMessage queued, PublishMessage message) {
+            for (ListIterator<PublishMessage> it = queue.listIterator(); it.hasNext(); ) {
+                if (it.next() == queued) {
+                    it.set(message);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Remove the queued message with the supplied response channel.
+         *
+         * @return True if a message was removed
+         */
+        boolean remove(String responseChannel) {
+            return queue.removeIf(message -> responseChannel.equals(message.responseChannel));
+        }
+
+        /**
+         * Move up to max messages to the supplied list, in the order they were added. Stops at the
+         * first message which is not ready.
+         *
+         * @return The number of messages moved
+         */
+        int drainTo(List<PublishMessage> messages, int max, long now, Predicate<PublishMessage> ready) {
+            int count = 0;
+            while (count < max && !queue.isEmpty() && ready.test(queue.peek())) {
+                PublishMessage message = queue.poll();
+                long wait = now - message.queueTime;
+                totalWait += wait;
+                maxWait = Math.max(maxWait, wait);
+                messages.add(message);
+                count++;
+            }
+            published += count;
+            return count;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name + " lane: depth " + queue.size() + " (max " + maxDepth + ")"
+                    + ", wait avg " + (published > 0 ? totalWait / published : 0) + " ms (max " + maxWait + " ms)";
         }
     }
 }
@@ -0,0 +1,127 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.Nullable;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-serialized JSON for the command part of frequently sent slim requests, f.e.
+ * <code>["mixer","volume","50"]</code>.
+ * <p>
+ * A template holds the fixed command terms of a command which takes one non-negative integer
+ * argument. The JSON for small arguments is cached, so publishing f.e. a volume change doesn't
+ * build and serialize a new list of command terms.
+ */
+class CommandTemplate {
+    /** Arguments below this are cached. */
+    private static final int CACHED_VALUES = 128;
+
+    private final String[] terms;
+    private final String prefix;
+    private final JSON.Literal[] cache = new JSON.Literal[CACHED_VALUES];
+
+    /**
+     * @param terms The fixed command terms, which are followed by the argument
+     */
+    CommandTemplate(String... terms) {
+        this.terms = terms;
+        StringBuilder sb = new StringBuilder("[");
+        for (String term : terms) {
+            JSON.getDefault().append(sb, term);
+            sb.append(',');
+        }
+        prefix = sb.append('"').toString();
+    }
+
+    /**
+     * @return True if the supplied command consists of the terms of this template followed by one
+     *     argument
+     */
+    boolean matches(String[] cmd) {
+        if (cmd.length != terms.length + 1) {
+            return false;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (!terms[i].equals(cmd[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The serialized command for the supplied argument, or null if the argument is not a
+     *     non-negative integer.
+     */
+    @Nullable
+    JSON.Literal literal(String value) {
+        int length = value.length();
+        if (length == 0 || length > 9) {
+            return null;
+        }
+        int number = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        if (number < CACHED_VALUES && (length == 1 || value.charAt(0) != '0')) {
+            JSON.Literal literal = cache[number];
+            if (literal == null) {
+                literal = cache[number] = new JSON.Literal(prefix + value + "\"]");
+            }
+            return literal;
+        }
+        return new JSON.Literal(prefix + value + "\"]");
+    }
+
+    /**
+     * @param start The start of the paging parameters, or null if the command isn't paged
+     * @param page The number of items of the paging parameters
+     *
+     * @return The command terms, followed by the parameters without values, the paging
+     *     parameters and finally parameters with values as "key:value". Both kinds of parameters
+     *     are in the iteration order of the supplied parameters.
+     */
+    static Object[] slimCommand(List<String> cmd, Map<String, Object> params, @Nullable String start, String page) {
+        int pageSize = (start != null ? 2 : 0);
+        int valuelessParams = 0;
+        for (Object value : params.values()) {
+            if (value == null) {
+                valuelessParams++;
+            }
+        }
+        Object[] inner = new Object[cmd.size() + pageSize + params.size()];
+        int head = 0;
+        for (String term : cmd) {
+            inner[head++] = term;
+        }
+        // Parameters with values start after paging
+        int tail = head + valuelessParams + pageSize;
+        for (Map.Entry<String, Object> parameter : params.entrySet()) {
+            if (parameter.getValue() == null) {
+                inner[head++] = parameter.getKey();
+            } else {
+                inner[tail++] = parameter.getKey() + ":" + parameter.getValue();
+            }
+        }
+        if (start != null) {
+            inner[head++] = start;
+            inner[head] = page;
+        }
+        return inner;
+    }
+
+    /**
+     * @return The supplied command serialized, for use as a template for identical commands.
+     */
+    static JSON.Literal literal(Object[] command) {
+        return new JSON.Literal(JSON.toString(command));
+    }
+}
@@ -152,7 +152,10 @@ public class ConnectionState {
         return mActivePlayer.get();
     }
 
-    private @NonNull Set<Player> getSyncGroup() {
+    /**
+     * @return The active player and the players it is synced with
+     */
+    @NonNull Set<Player> getSyncGroup() {
         Set<Player> out = new HashSet<>();
 
         Player player = getActivePlayer();
@@ -0,0 +1,83 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of posts and histogram of the dispatch times per event type.
+ * <p>
+ * The histogram buckets are powers of two of microseconds, so bucket 0 counts posts which took
+ * less than 1 us, bucket 1 less than 2 us, bucket 2 less than 4 us and so on. The last bucket
+ * counts everything slower.
+ * <p>
+ * This class is thread safe.
+ */
+class EventStats {
+    static final int BUCKETS = 16;
+
+    private final Map<Class<?>, long[]> stats = new HashMap<>();
+
+    /**
+     * Record a post of an event of the supplied type.
+     *
+     * @param eventType Type of the event
+     * @param nanos Time spent dispatching the event
+     */
+    synchronized void record(Class<?> eventType, long nanos) {
+        long[] histogram = stats.get(eventType);
+        if (histogram == null) {
+            histogram = new long[BUCKETS];
+            stats.put(eventType, histogram);
+        }
+        histogram[bucket(nanos)]++;
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    /**
+     * @return The number of posts of events of the supplied type
+     */
+    synchronized long getCount(Class<?> eventType) {
+        long[] histogram = stats.get(eventType);
+        long count = 0;
+        if (histogram != null) {
+            for (long n : histogram) {
+                count += n;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return A copy of the histogram of dispatch times of events of the supplied type
+     */
+    synchronized long[] getHistogram(Class<?> eventType) {
+        long[] histogram = stats.get(eventType);
+        return (histogram != null) ? histogram.clone() : new long[BUCKETS];
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Class<?>, long[]> entry : stats.entrySet()) {
+            StringBuilder sb = new StringBuilder(entry.getKey().getSimpleName())
+                    .append(": ").append(getCount(entry.getKey())).append(" posts");
+            long[] histogram = entry.getValue();
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] > 0) {
+                    sb.append(i < BUCKETS - 1 ? ", <" + (1 << i) : ", >=" + (1 << (i - 1))).append("us: ").append(histogram[i]);
+                }
+            }
+            lines.add(sb.toString());
+        }
+        return String.join("\n", lines);
+    }
+}
@@ -0,0 +1,173 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
+
+/**
+ * Fetches the rest of a full list, once the first response has told the number of items.
+ * <p>
+ * The remaining items are split in ranges, and up to a window of ranges are requested at the same
+ * time, so fetching a long list doesn't cost a round-trip per range. Ranges are delivered to the
+ * callback in order, unless it accepts them as they arrive, see
+ * {@link IServiceItemListCallback#needsOrderedItems()}.
+ * <p>
+ * If the server sends fewer items than requested for a range, the rest of the range is requested.
+ * A range which fails is delivered to {@link IServiceItemListCallback#onItemsFailed(int, Throwable)}
+ * in its place, so the ranges after it are not held back.
+ */
+class FullListFetch<T> {
+
+    /** Sends the requests for the ranges of a fetch. */
+    interface RangeRequester<T> {
+        /**
+         * @return The number of items to request from start, at most end - start
+         */
+        int itemsPerResponse(int start, int end);
+
+        /**
+         * Request a range of items. The response must be supplied to
+         * {@link #onItemsReceived(int, int, Map, List, Class)} or {@link #onItemsFailed(int, Throwable)}.
+         */
+        void requestRange(FullListFetch<T> fetch, int start, int itemsPerResponse);
+    }
+
+    private final IServiceItemListCallback<T> callback;
+    private final RangeRequester<T> requester;
+    private final int count;
+    private final int window;
+    private final boolean ordered;
+
+    /** Requested ranges which have not been delivered, by start */
+    private final TreeMap<Integer, Range<T>> mRanges = new TreeMap<>();
+
+    /** Start of the next range to request */
+    private int mNextStart;
+
+    /** Number of requested ranges without a response */
+    private int mInFlight;
+
+    /**
+     * @param start Position of the first item which is not received yet
+     * @param count Total number of items
+     * @param window Maximum number of ranges to request at the same time
+     */
+    FullListFetch(@NonNull IServiceItemListCallback<T> callback, @NonNull RangeRequester<T> requester, int start, int count, int window) {
+        this.callback = callback;
+        this.requester = requester;
+        this.count = count;
+        this.window = window;
+        this.ordered = callback.needsOrderedItems();
+        mNextStart = start;
+    }
+
+    /**
+     * Request the first window of ranges.
+     */
+    synchronized void start() {
+        requestRanges();
+    }
+
+    /**
+     * Supply a response to a range requested by this.
+     */
+    synchronized void onItemsReceived(int start, int count, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+        Range<T> range = mRanges.get(start);
+        if (range == null || range.done) {
+            return;
+        }
+        mInFlight--;
+
+        int end = start + items.size();
+        if (end > start && end < range.end) {
+            // The server sent fewer items than requested, so request the rest of the range
+            requestRange(end, range.end - end);
+        }
+
+        range.done = true;
+        range.count = count;
+        range.parameters = parameters;
+        range.items = new ArrayList<>(items);
+        range.dataType = dataType;
+
+        deliverRanges();
+        requestRanges();
+    }
+
+    /**
+     * Supply the failure of a range requested by this.
+     */
+    synchronized void onItemsFailed(int start, Throwable failure) {
+        Range<T> range = mRanges.get(start);
+        if (range == null || range.done) {
+            return;
+        }
+        mInFlight--;
+
+        range.done = true;
+        range.failure = failure;
+
+        deliverRanges();
+        requestRanges();
+    }
+
+    private void requestRanges() {
+        while (mInFlight < window && mNextStart < count) {
+            int itemsPerResponse = Math.max(1, requester.itemsPerResponse(mNextStart, count));
+            requestRange(mNextStart, itemsPerResponse);
+            mNextStart += itemsPerResponse;
+        }
+    }
+
+    private void requestRange(int start, int itemsPerResponse) {
+        mRanges.put(start, new Range<>(start + itemsPerResponse));
+        mInFlight++;
+        requester.requestRange(this, start, itemsPerResponse);
+    }
+
+    /**
+     * Deliver the ranges which have a response, in order if the callback needs that.
+     */
+    private void deliverRanges() {
+        for (Iterator<Map.Entry<Integer, Range<T>>> it = mRanges.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Range<T>> entry = it.next();
+            int start = entry.getKey();
+            Range<T> range = entry.getValue();
+            if (!range.done) {
+                if (ordered) {
+                    break;
+                }
+                continue;
+            }
+
+            // The entry may be reused by the map once it is removed
+            it.remove();
+            if (range.failure != null) {
+                callback.onItemsFailed(start, range.failure);
+            } else if (!range.items.isEmpty()) {
+                callback.onItemsReceived(range.count, start, range.parameters, range.items, range.dataType);
+            }
+        }
+    }
+
+    private static class Range<T> {
+        /** Position after the last item of the range */
+        private final int end;
+        private boolean done;
+        private int count;
+        private Map<String, Object> parameters;
+        private List<T> items;
+        private Class<T> dataType;
+        private Throwable failure;
+
+        private Range(int end) {
+            this.end = end;
+        }
+    }
+}
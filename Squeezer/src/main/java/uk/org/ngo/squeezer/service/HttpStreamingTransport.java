@@ -1,6 +1,5 @@
 package uk.org.ngo.squeezer.service;
 
-import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -19,20 +18,17 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.http.HttpDestinationOverHTTP;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
-import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import java.io.BufferedReader;
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -44,6 +40,8 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -53,23 +51,38 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+
+import uk.org.ngo.squeezer.util.HashedWheelTimer;
 
 
 public class HttpStreamingTransport extends HttpClientTransport implements MessageClientTransport {
     public static final String NAME = "streaming";
     public static final String PREFIX = "http-streaming.json";
     public static final String MAX_BUFFER_SIZE_OPTION = "maxBufferSize";
+    /** If true, the streaming connection is decoded at the byte level, see {@link ByteListeningThread} */
+    public static final String BYTE_DECODER_OPTION = "byteDecoder";
+    /**
+     * If true, compressed content is requested on the streaming connection (this requires
+     * {@link #BYTE_DECODER_OPTION}). Falls back to uncompressed content if the server sends an
+     * encoding we can't decode.
+     * <p>
+     * Request bodies are always sent uncompressed, as the server doesn't announce that it accepts
+     * compressed requests, and a rejected batch can't safely be sent again.
+     */
+    public static final String COMPRESSION_OPTION = "compression";
     private static final String TAG = HttpStreamingTransport.class.getSimpleName();
 
-    private ScheduledExecutorService _scheduler;
-    private boolean _shutdownScheduler;
+    /** Resolution in milliseconds of message timeouts */
+    private static final long TIMEOUT_TICK = 100;
+
+    /** Expires messages which didn't receive a reply, see {@link Delegate#registerMessage(Message.Mutable, TransportListener)} */
+    private final HashedWheelTimer _timer = new HashedWheelTimer(TAG + " timeout", TIMEOUT_TICK, 256);
 
     // The CometD library reschedules connect (channel META_CONNECT) messages to keep the connection
     // alive, but SN and LMS sees this as a connection request, and instead relies on an active
@@ -85,6 +98,10 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
     private final List<Request> _requests = new ArrayList<>();
     private volatile boolean _aborted;
     private volatile int _maxBufferSize;
+    private volatile boolean _byteDecoder;
+    private volatile boolean _compressResponses;
+    private final AtomicLong _bytesSent = new AtomicLong();
+    private final AtomicLong _bytesReceived = new AtomicLong();
     private volatile boolean _appendMessageType;
     private volatile CookieManager _cookieManager;
 
@@ -121,6 +138,8 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         setMaxNetworkDelay(defaultMaxNetworkDelay);
 
         _maxBufferSize = getOption(MAX_BUFFER_SIZE_OPTION, 1024 * 1024);
+        _byteDecoder = getOption(BYTE_DECODER_OPTION, false);
+        _compressResponses = getOption(COMPRESSION_OPTION, false) && _byteDecoder;
 
         Pattern uriRegexp = Pattern.compile("(^https?://(((\\[[^\\]]+\\])|([^:/\\?#]+))(:(\\d+))?))?([^\\?#]*)(.*)?");
         Matcher uriMatcher = uriRegexp.matcher(getURL());
@@ -129,17 +148,6 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             _appendMessageType = afterPath == null || afterPath.trim().length() == 0;
         }
         _cookieManager = new CookieManager(getCookieStore(), CookiePolicy.ACCEPT_ALL);
-
-        if (_scheduler == null) {
-            _shutdownScheduler = true;
-            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
-            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                scheduler.setRemoveOnCancelPolicy(true);
-            }
-            _scheduler = scheduler;
-        }
-
     }
 
     @Override
@@ -153,24 +161,36 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         for (Request request : requests) {
             request.abort(new Exception("Transport " + this + " aborted"));
         }
-        shutdownScheduler();
+        _delegate.cancelTimeouts();
     }
 
     @Override
     public void terminate()
     {
-        shutdownScheduler();
+        _delegate.cancelTimeouts();
         super.terminate();
     }
 
-    private void shutdownScheduler()
-    {
-        if (_shutdownScheduler)
-        {
-            _shutdownScheduler = false;
-            _scheduler.shutdownNow();
-            _scheduler = null;
-        }
+    /**
+     * @return The number of messages sent on the streaming connection which are waiting for a reply
+     */
+    public int getOutstandingExchanges() {
+        return _delegate._exchanges.size();
+    }
+
+    /**
+     * @return The number of bytes sent, on the streaming connection and as request bodies
+     */
+    public long getBytesSent() {
+        return _bytesSent.get();
+    }
+
+    /**
+     * @return The number of bytes received, on the streaming connection and as response bodies.
+     *     Response bodies without a Content-Length header are counted after decompression.
+     */
+    public long getBytesReceived() {
+        return _bytesReceived.get();
     }
 
     @Override
@@ -258,7 +278,9 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
         String content = generateJSON(requestMessages);
         //Log.v(TAG,"Sending messages " + content);
-        request.content(new StringContentProvider(content));
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        request.content(new BytesContentProvider(body));
+        _bytesSent.addAndGet(body.length);
 
         customize(request);
 
@@ -282,9 +304,15 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         request.idleTimeout(maxNetworkDelay * 2, TimeUnit.MILLISECONDS);
         request.timeout(maxNetworkDelay, TimeUnit.MILLISECONDS);
         request.send(new BufferingResponseListener(_maxBufferSize) {
+            /** Length of the response body as sent by the server, or -1 if not known */
+            private long wireLength = -1;
+
             @Override
             public boolean onHeader(Response response, HttpField field) {
                 HttpHeader header = field.getHeader();
+                if (header == HttpHeader.CONTENT_LENGTH) {
+                    wireLength = field.getLongValue();
+                }
                 if ((header == HttpHeader.SET_COOKIE || header == HttpHeader.SET_COOKIE2)) {
                     // We do not allow cookies to be handled by HttpClient, since one
                     // HttpClient instance is shared by multiple BayeuxClient instances.
@@ -318,6 +346,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
                 Response response = result.getResponse();
                 int status = response.getStatus();
+                _bytesReceived.addAndGet(wireLength >= 0 ? wireLength : getContent().length);
                 if (status == HttpStatus.OK_200) {
                     String content = getContentAsString();
                     if (content != null && content.length() > 0) {
@@ -371,10 +400,16 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         });
     }
 
-    private static void sendText(OutputStream stream, String json, HttpFields customHeaders) throws IOException {
+    /**
+     * @return The number of bytes written
+     */
+    private static int sendText(OutputStream stream, String json, HttpFields customHeaders, boolean acceptCompressed) throws IOException {
         StringBuilder msg = new StringBuilder("POST /cometd HTTP/1.1\r\n" +
                 HttpHeader.CONTENT_TYPE.asString() + ": text/json;charset=UTF-8\r\n" +
                 HttpHeader.CONTENT_LENGTH.asString() + ": " + json.length() + "\r\n");
+        if (acceptCompressed) {
+            msg.append(HttpHeader.ACCEPT_ENCODING.asString()).append(": gzip, deflate\r\n");
+        }
 
         for (HttpField httpField : customHeaders) {
             if (httpField.getHeader() != HttpHeader.ACCEPT_ENCODING) {
@@ -383,8 +418,10 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         }
         msg.append("\r\n").append(json);
         //Log.v(TAG,"sendtext: " + msg);
-        stream.write(msg.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = msg.toString().getBytes(StandardCharsets.UTF_8);
+        stream.write(bytes);
         stream.flush();
+        return bytes.length;
     }
 
     private class Delegate {
@@ -419,14 +456,28 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
         }
 
         public void connect(String host, int port) throws IOException {
-            Socket session = new Socket();
+            SocketChannel channel = _byteDecoder ? SocketChannel.open() : null;
+            Socket session = (channel != null) ? channel.socket() : new Socket();
 
             synchronized (this) {
                 socket = session;
             }
 
             session.connect(new InetSocketAddress(host, port), 4000); // TODO use proper timeout
-            new ListeningThread(this, session.getInputStream()).start();
+            if (channel != null) {
+                new ByteListeningThread(this, channel, _bytesReceived).start();
+            } else {
+                new ListeningThread(this, new CountingInputStream(session.getInputStream(), _bytesReceived)).start();
+            }
+        }
+
+        /**
+         * The server sent compressed content we could not decode, so request uncompressed content
+         * on the next connection.
+         */
+        private void onCompressionFailed() {
+            Log.w(TAG, "Could not decode compressed content, requesting uncompressed content");
+            _compressResponses = false;
         }
 
         private void disconnect(String reason) {
@@ -491,7 +542,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             }
 
             // Schedule a task to expire if the maxNetworkDelay elapses
-            ScheduledFuture<?> task = _scheduler.schedule(() -> fail(new TimeoutException(), "Expired"), maxNetworkDelay, TimeUnit.MILLISECONDS);
+            HashedWheelTimer.Timeout task = _timer.newTimeout(() -> fail(new TimeoutException(), "Expired"), maxNetworkDelay);
 
             // Register the exchange
             // Message responses must have the same messageId as the requests
@@ -504,11 +555,20 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                 throw new IllegalStateException();
         }
 
+        /**
+         * Cancel the timeouts of the messages waiting for a reply, so they don't expire after the
+         * transport is aborted.
+         */
+        private void cancelTimeouts() {
+            for (Exchange exchange : _exchanges.values())
+                exchange.task.cancel();
+        }
+
         private Exchange deregisterMessage(Message.Mutable message) {
             Exchange exchange = (message.getId() != null) ? _exchanges.remove(message.getId()) : null;
             //Log.d(TAG, "Deregistering " + exchange + " for message " + message);
             if (exchange != null)
-                exchange.task.cancel(false);
+                exchange.task.cancel();
 
             return exchange;
         }
@@ -557,7 +617,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                 throw new IOException("Unconnected");
             }
 
-            sendText(session.getOutputStream(), content, headers);
+            _bytesSent.addAndGet(sendText(session.getOutputStream(), content, headers, _compressResponses));
         }
 
         private void onData(String data) {
@@ -623,9 +683,9 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
     private static class Exchange {
         private final Message.Mutable message;
         private final TransportListener listener;
-        private final ScheduledFuture<?> task;
+        private final HashedWheelTimer.Timeout task;
 
-        public Exchange(Message.Mutable message, TransportListener listener, ScheduledFuture<?> task) {
+        public Exchange(Message.Mutable message, TransportListener listener, HashedWheelTimer.Timeout task) {
             this.message = message;
             this.listener = listener;
             this.task = task;
@@ -641,6 +701,7 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
     private static class ListeningThread extends Thread {
         private final Delegate delegate;
         private final BufferedReader reader;
+        private final JsonFramer framer = new JsonFramer();
 
         public ListeningThread(Delegate delegate, InputStream inputStream) {
             this.delegate = delegate;
@@ -679,22 +740,21 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
                             delegate.fail(x, "No content");
                         }
                     } else {
-                        String unprocessed = "";
+                        // Frames are handed to the delegate as soon as they are complete, so we
+                        // never rescan or copy data already received.
+                        JsonFramer.Listener listener = (status == HttpStatus.OK_200) ? delegate::onData : json -> {};
+                        framer.reset();
                         while (!"0".equals(readLine())) {
                             String data = readLine();
-                            Log.v(TAG, "data = " + data);
-                            unprocessed += data;
-                            Log.v(TAG, "unprocessed = " + unprocessed);
-                            if (isValidJson(unprocessed)) {
-                                Log.v(TAG, "JSON is valid! Sending data to parser.");
-                                if (status == HttpStatus.OK_200) {
-                                    delegate.onData(unprocessed);
-                                }
-                                unprocessed = "";
-                            } else {
-                                Log.v(TAG, "JSON is not valid! Appending to next chunk.");
+                            try {
+                                framer.append(data, listener);
+                            } catch (ParseException x) {
+                                delegate.fail(x, "ParseException");
                             }
                         }
+                        if (framer.hasPartialFrame()) {
+                            Log.w(TAG, "Discarding incomplete JSON at end of chunks");
+                        }
                         readLine();//Read final/empty chunk
                         delegate.disconnect("End of chunks");
                     }
@@ -713,21 +773,6 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
             }
         }
 
-        private boolean isValidJson(String jsonStr) {
-            try {
-                JSONTokener tokenizer = new JSONTokener(jsonStr);
-                while (tokenizer.more()) {
-                    Object json = tokenizer.nextValue();
-                    if (!(json instanceof JSONObject || json instanceof JSONArray)) {
-                        return false;
-                    }
-                }
-                return true;
-            } catch (JSONException e) {
-                return false;
-            }
-        }
-
         Pattern httpStatusLinePattern = Pattern.compile("HTTP/1.1 (\\d{3}) \\p{all}+");
         private int parseHttpStatus(String statusLine) {
             Matcher m = httpStatusLinePattern.matcher(statusLine);
@@ -750,14 +795,327 @@ public class HttpStreamingTransport extends HttpClientTransport implements Messa
 
         private String read(int size) throws IOException {
             char[] buffer = new char[size];
-            int length = reader.read(buffer);
-            if (length != size) {
-                throw new EOFException("Expected " + size + " characters, but got " + length);
+            int length = 0;
+            while (length < size) {
+                int read = reader.read(buffer, length, size - length);
+                if (read < 0) {
+                    throw new EOFException("Expected " + size + " characters, but got " + length);
+                }
+                length += read;
             }
             return new String(buffer);
         }
     }
 
+    /**
+     * Reads the streaming connection directly from the socket channel into a direct buffer, which
+     * is reused for the lifetime of the connection.
+     * <p>
+     * The status line, headers and chunk sizes are parsed as bytes, and the content is passed as
+     * UTF-8 bytes to a {@link JsonFramer}, so the only strings created are the complete JSON frames
+     * handed to the bayeux parser. Chunk data is read according to the chunk size, and content
+     * according to the Content-Length header, so neither depends on line breaks or on a single
+     * read returning all the requested data. Gzip or deflate encoded content is decompressed by a
+     * {@link StreamInflater} before it is framed.
+     */
+    private static class ByteListeningThread extends Thread {
+        private static final int BUFFER_SIZE = 16 * 1024;
+        private static final int MAX_LINE_LENGTH = 8 * 1024;
+        private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] CONTENT_ENCODING = "content-encoding".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] IDENTITY = "identity".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+
+        private final Delegate delegate;
+        private final SocketChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        private final JsonFramer framer = new JsonFramer();
+        private final AtomicLong bytesReceived;
+
+        /** Decompresses the content of the current response, or null if it isn't compressed */
+        private StreamInflater inflater;
+
+        public ByteListeningThread(Delegate delegate, SocketChannel channel, AtomicLong bytesReceived) {
+            this.delegate = delegate;
+            this.channel = channel;
+            this.bytesReceived = bytesReceived;
+            buffer.flip();
+        }
+
+        @Override
+        public void run() {
+            while (delegate.isConnected()) {
+                try {
+                    int status = parseHttpStatus(readLine());
+
+                    boolean chunked = false;
+                    int contentSize = 0;
+                    String contentEncoding = null;
+                    int length;
+                    while ((length = readLine()) > 0) {
+                        int colon = indexOf(':', 0, length);
+                        if (colon < 0) {
+                            continue;
+                        }
+                        int value = skipSpaces(colon + 1, length);
+                        if (headerNameIs(TRANSFER_ENCODING, colon)) {
+                            chunked = regionMatches(CHUNKED, value, length);
+                        } else if (headerNameIs(CONTENT_LENGTH, colon)) {
+                            contentSize = parseNumber(value, length, 10);
+                        } else if (headerNameIs(CONTENT_ENCODING, colon) && !regionMatches(IDENTITY, value, length)) {
+                            contentEncoding = new String(line, value, trimEnd(value, length) - value, StandardCharsets.US_ASCII);
+                        }
+                    }
+
+                    endInflater();
+                    if (contentEncoding != null) {
+                        inflater = StreamInflater.forEncoding(contentEncoding, BUFFER_SIZE);
+                        if (inflater == null) {
+                            delegate.onCompressionFailed();
+                            throw new IOException("Unsupported content encoding: " + contentEncoding);
+                        }
+                    }
+
+                    JsonFramer.Listener listener = (status == HttpStatus.OK_200) ? delegate::onData : json -> {};
+                    framer.reset();
+                    if (!chunked) {
+                        if (contentSize > 0) {
+                            readContent(contentSize, listener);
+                            if (framer.hasPartialFrame()) {
+                                delegate.fail(new ParseException("Incomplete JSON content", contentSize), "ParseException");
+                            }
+                        } else {
+                            Map<String, Object> failure = new HashMap<>(2);
+                            // Convert the 200 into 204 (no content)
+                            failure.put("httpCode", HttpStatus.NO_CONTENT_204);
+                            TransportException x = new TransportException(failure);
+                            delegate.fail(x, "No content");
+                        }
+                    } else {
+                        int chunkSize;
+                        while ((chunkSize = readChunkSize()) > 0) {
+                            readContent(chunkSize, listener);
+                            readLine();// CRLF after the chunk data
+                        }
+                        while (readLine() > 0) {
+                            // Skip trailers
+                        }
+                        if (framer.hasPartialFrame()) {
+                            Log.w(TAG, "Discarding incomplete JSON at end of chunks");
+                        }
+                        delegate.disconnect("End of chunks");
+                    }
+
+                    if (status != HttpStatus.OK_200) {
+                        Map<String, Object> failure = new HashMap<>(2);
+                        failure.put("httpCode", status);
+                        TransportException x = new TransportException(failure);
+                        delegate.fail(x, "Unexpected HTTP status code");
+                    }
+                } catch (IOException e) {
+                    if (delegate.isConnected()) {
+                        delegate.fail(e, "IOException reading socket");
+                    }
+                }
+            }
+            endInflater();
+        }
+
+        private void endInflater() {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+
+        /**
+         * Pass the next size bytes of content to the framer, as they become available. Compressed
+         * content is decompressed first.
+         */
+        private void readContent(int size, JsonFramer.Listener listener) throws IOException {
+            while (size > 0) {
+                if (!buffer.hasRemaining()) {
+                    fill();
+                }
+                int length = Math.min(size, buffer.remaining());
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + length);
+                try {
+                    if (inflater == null) {
+                        framer.append(buffer, listener);
+                    } else {
+                        inflater.setInput(buffer);
+                        ByteBuffer data;
+                        while ((data = inflater.inflate()) != null) {
+                            framer.append(data, listener);
+                        }
+                    }
+                } catch (ParseException x) {
+                    delegate.fail(x, "ParseException");
+                } catch (DataFormatException x) {
+                    delegate.onCompressionFailed();
+                    throw new IOException("Invalid compressed content", x);
+                } finally {
+                    buffer.limit(limit);
+                }
+                size -= length;
+            }
+        }
+
+        /**
+         * Read a line into {@link #line}, without the line terminator.
+         *
+         * @return The length of the line
+         */
+        private int readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    fill();
+                }
+                byte b = buffer.get();
+                if (b == '\n') {
+                    return (length > 0 && line[length - 1] == '\r') ? length - 1 : length;
+                }
+                if (length == line.length) {
+                    throw new IOException("Line exceeds " + line.length + " bytes");
+                }
+                line[length++] = b;
+            }
+        }
+
+        private int readChunkSize() throws IOException {
+            int length = readLine();
+            // Ignore chunk extensions
+            int end = indexOf(';', 0, length);
+            return parseNumber(0, (end < 0) ? length : end, 16);
+        }
+
+        /**
+         * Read more data from the channel into the buffer, keeping unread data.
+         */
+        private void fill() throws IOException {
+            buffer.compact();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } finally {
+                buffer.flip();
+            }
+            if (read < 0) {
+                throw new EOFException();
+            }
+            bytesReceived.addAndGet(read);
+        }
+
+        private int parseHttpStatus(int length) {
+            // HTTP/1.1 200 OK
+            int start = indexOf(' ', 0, length) + 1;
+            if (start == 0 || start + 3 > length) {
+                return -1;
+            }
+            try {
+                return parseNumber(start, start + 3, 10);
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        private int parseNumber(int start, int end, int radix) throws IOException {
+            end = trimEnd(start, end);
+            if (start == end) {
+                throw new IOException("Missing number");
+            }
+            int result = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(line[i], radix);
+                if (digit < 0 || result > (Integer.MAX_VALUE - digit) / radix) {
+                    throw new IOException("Invalid number: " + new String(line, start, end - start, StandardCharsets.US_ASCII));
+                }
+                result = result * radix + digit;
+            }
+            return result;
+        }
+
+        private boolean headerNameIs(byte[] name, int length) {
+            return length == name.length && regionMatches(name, 0, length);
+        }
+
+        /**
+         * @return True if the line from start to end is the supplied lower case ASCII value, ignoring case
+         */
+        private boolean regionMatches(byte[] value, int start, int end) {
+            if (trimEnd(start, end) - start != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                int b = line[start + i];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf(char c, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (line[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int skipSpaces(int start, int end) {
+            while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+                start++;
+            }
+            return start;
+        }
+
+        private int trimEnd(int start, int end) {
+            while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+                end--;
+            }
+            return end;
+        }
+    }
+
+
+    /**
+     * Counts the bytes read from the wrapped stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        private CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count.addAndGet(read);
+            }
+            return read;
+        }
+    }
 
     private static String getAdviceAction(Map<String, Object> advice) {
         String action = null;
@@ -136,6 +136,9 @@ public interface ISqueezeService {
     /** Cancel any pending callbacks for client */
     void cancelItemListRequests(Object client);
 
+    /** Cancel pending callbacks for client for the items from start (inclusive) to end (exclusive) */
+    void cancelItemListRequests(Object client, int start, int end);
+
     /** Alarm list */
     void alarms(int start, IServiceItemListCallback<Alarm> callback);
 
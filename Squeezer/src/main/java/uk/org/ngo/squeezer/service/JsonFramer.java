@@ -0,0 +1,197 @@
+package uk.org.ngo.squeezer.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * Splits a stream of concatenated JSON values into complete top level values.
+ * <p>
+ * LMS may split one bayeux message array over several HTTP chunks, and may put several message
+ * arrays into one chunk. Data is appended as it arrives, and each character is scanned exactly once.
+ * Nesting depth, strings and escapes are tracked across calls to {@link #append(CharSequence, Listener)},
+ * so a frame is emitted as soon as its closing bracket is seen.
+ * <p>
+ * Data may also be appended as UTF-8 encoded bytes with {@link #append(ByteBuffer, Listener)}. All
+ * structural JSON characters are ASCII, and bytes of multi-byte UTF-8 sequences are never in the
+ * ASCII range, so the bytes can be scanned directly. Each frame is decoded once, when it is complete.
+ * A framer instance must only be used with one of the two variants between calls to {@link #reset()}.
+ * <p>
+ * Only objects and arrays are accepted at the top level.
+ */
+class JsonFramer {
+
+    interface Listener {
+        /**
+         * Called for each complete top level JSON value.
+         *
+         * @param json The text of the value
+         */
+        void onFrame(String json);
+    }
+
+    /** Characters received but not yet emitted as a complete frame. */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** UTF-8 bytes received but not yet emitted as a complete frame. */
+    private byte[] bytes = new byte[0];
+
+    /** Number of valid bytes in {@link #bytes}. */
+    private int byteCount;
+
+    /** Number of characters (or bytes) in the buffer which have been scanned. */
+    private int scanned;
+
+    /** Start of the current frame in the buffer or -1 if we are between frames. */
+    private int frameStart = -1;
+
+    /** End of the last frame completed by {@link #scan(int, int)}. */
+    private int frameEnd;
+
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+
+    /**
+     * Append the supplied data, and call the listener for each frame it completes.
+     *
+     * @throws ParseException If the data can't be the start of or part of a JSON object or array.
+     *     The framer is reset before the exception is thrown.
+     */
+    void append(CharSequence data, Listener listener) throws ParseException {
+        buffer.append(data);
+
+        frameEnd = 0;
+        int length = buffer.length();
+        for (int i = scanned; i < length; i++) {
+            if (scan(buffer.charAt(i), i)) {
+                listener.onFrame(buffer.substring(frameStart, frameEnd));
+                frameStart = -1;
+            }
+        }
+
+        // Discard everything up to the last emitted frame, so the buffer only holds a partial frame
+        if (frameStart < 0) {
+            buffer.setLength(0);
+        } else if (frameEnd > 0) {
+            buffer.delete(0, frameEnd);
+            frameStart -= frameEnd;
+        }
+        scanned = buffer.length();
+    }
+
+    /**
+     * Append the remaining UTF-8 encoded bytes of the supplied buffer, and call the listener for
+     * each frame they complete. The buffer position is advanced to its limit.
+     *
+     * @throws ParseException If the data can't be the start of or part of a JSON object or array.
+     *     The framer is reset before the exception is thrown.
+     */
+    void append(ByteBuffer data, Listener listener) throws ParseException {
+        int length = data.remaining();
+        if (byteCount + length > bytes.length) {
+            byte[] newBytes = new byte[Math.max(byteCount + length, bytes.length * 2)];
+            System.arraycopy(bytes, 0, newBytes, 0, byteCount);
+            bytes = newBytes;
+        }
+        data.get(bytes, byteCount, length);
+        byteCount += length;
+
+        frameEnd = 0;
+        for (int i = scanned; i < byteCount; i++) {
+            if (scan(bytes[i] & 0xff, i)) {
+                listener.onFrame(new String(bytes, frameStart, frameEnd - frameStart, StandardCharsets.UTF_8));
+                frameStart = -1;
+            }
+        }
+
+        if (frameStart < 0) {
+            byteCount = 0;
+        } else if (frameEnd > 0) {
+            System.arraycopy(bytes, frameEnd, bytes, 0, byteCount - frameEnd);
+            byteCount -= frameEnd;
+            frameStart -= frameEnd;
+        }
+        scanned = byteCount;
+    }
+
+    /**
+     * Update the scanner state with the character at the supplied offset.
+     *
+     * @return True if this completes a frame, which then starts at {@link #frameStart} and ends
+     *     at {@link #frameEnd}.
+     */
+    private boolean scan(int c, int offset) throws ParseException {
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return false;
+        }
+
+        switch (c) {
+            case '"':
+                if (depth == 0) {
+                    throw error("String outside object or array", offset);
+                }
+                inString = true;
+                break;
+            case '{':
+            case '[':
+                if (depth++ == 0) {
+                    frameStart = offset;
+                }
+                break;
+            case '}':
+            case ']':
+                if (depth == 0) {
+                    throw error("Unbalanced '" + (char) c + "'", offset);
+                }
+                if (--depth == 0) {
+                    frameEnd = offset + 1;
+                    return true;
+                }
+                break;
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                break;
+            default:
+                if (depth == 0) {
+                    throw error("Unexpected '" + (char) c + "'", offset);
+                }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a frame has been started but not completed.
+     */
+    boolean hasPartialFrame() {
+        return frameStart >= 0;
+    }
+
+    /**
+     * Discard any partial frame and prepare for a new stream.
+     */
+    void reset() {
+        buffer.setLength(0);
+        byteCount = 0;
+        scanned = 0;
+        frameStart = -1;
+        frameEnd = 0;
+        depth = 0;
+        inString = false;
+        escape = false;
+    }
+
+    private ParseException error(String message, int offset) {
+        reset();
+        return new ParseException(message, offset);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import de.greenrobot.event.EventBus;
+import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.model.PlayerState;
+import uk.org.ngo.squeezer.service.event.MusicChanged;
+import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStatusDelta;
+import uk.org.ngo.squeezer.service.event.PlayerVolume;
+import uk.org.ngo.squeezer.service.event.PlaylistChanged;
+import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
+import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
+import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
+import uk.org.ngo.squeezer.service.event.SongTimeChanged;
+
+/**
+ * Posts the individual status events for a {@link PlayerStatusDelta}, for the subscribers which
+ * haven't moved to the aggregated event.
+ * <p>
+ * Events without subscribers are not posted, except the sticky {@link MusicChanged}, which
+ * subscribers may receive when they register later.
+ */
+class LegacyStatusEvents {
+    private static final int PLAYER_STATE_CHANGES = PlayerState.CHANGED_POWER | PlayerState.CHANGED_SLEEP
+            | PlayerState.CHANGED_VOLUME | PlayerState.CHANGED_SONG | PlayerState.CHANGED_SONG_DURATION
+            | PlayerState.CHANGED_SONG_TIME | PlayerState.CHANGED_SYNC;
+
+    private static final int SONG_TIME_CHANGES = PlayerState.CHANGED_SONG_DURATION
+            | PlayerState.CHANGED_SONG_TIME | PlayerState.CHANGED_PLAY_STATUS;
+
+    @NonNull
+    private final EventBus mEventBus;
+
+    LegacyStatusEvents(@NonNull EventBus eventBus) {
+        mEventBus = eventBus;
+    }
+
+    void post(PlayerStatusDelta delta) {
+        Player player = delta.player;
+        PlayerState playerState = delta.playerState;
+
+        // Playing status
+        if (delta.changed(PlayerState.CHANGED_PLAY_STATUS) && wanted(PlayStatusChanged.class)) {
+            mEventBus.post(new PlayStatusChanged(playerState.getPlayStatus(), player));
+        }
+
+        // Current playlist
+        if (delta.changed(PlayerState.CHANGED_PLAYLIST) && wanted(PlaylistChanged.class)) {
+            mEventBus.post(new PlaylistChanged(player));
+        }
+
+        if (delta.changed(PLAYER_STATE_CHANGES) && wanted(PlayerStateChanged.class)) {
+            mEventBus.post(new PlayerStateChanged(player));
+        }
+
+        // Volume
+        if (delta.changed(PlayerState.CHANGED_VOLUME) && wanted(PlayerVolume.class)) {
+            mEventBus.post(new PlayerVolume(player));
+        }
+
+        // Power status
+        if (delta.changed(PlayerState.CHANGED_POWER) && wanted(PowerStatusChanged.class)) {
+            mEventBus.post(new PowerStatusChanged(player));
+        }
+
+        // Current song
+        if (delta.changed(PlayerState.CHANGED_SONG)) {
+            mEventBus.postSticky(new MusicChanged(player, playerState));
+        }
+
+        // Shuffle status.
+        if (delta.changed(PlayerState.CHANGED_SHUFFLE) && wanted(ShuffleStatusChanged.class)) {
+            mEventBus.post(new ShuffleStatusChanged(player, playerState.getShuffleStatus()));
+        }
+
+        // Repeat status.
+        if (delta.changed(PlayerState.CHANGED_REPEAT) && wanted(RepeatStatusChanged.class)) {
+            mEventBus.post(new RepeatStatusChanged(player, playerState.getRepeatStatus()));
+        }
+
+        // Position in song
+        if (delta.changed(SONG_TIME_CHANGES) && wanted(SongTimeChanged.class)) {
+            mEventBus.post(player.getTrackElapsed());
+        }
+    }
+
+    private boolean wanted(Class<?> eventClass) {
+        return mEventBus.hasSubscriberForEvent(eventClass);
+    }
+}
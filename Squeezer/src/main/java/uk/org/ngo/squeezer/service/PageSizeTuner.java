@@ -0,0 +1,116 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of items to request in each response to a browse command, adapted to how the server
+ * handles that command.
+ * <p>
+ * Cheap commands, like local text menus on a fast link, get larger responses so fewer round-trips
+ * are needed. Commands which are slow to answer, or whose items are large, like artwork heavy menus
+ * of streaming services, get smaller responses so the first items are shown sooner.
+ * <p>
+ * The size grows while responses arrive well within {@link #TARGET_MILLIS}, and shrinks in
+ * proportion when they take longer. It never exceeds what fits in {@link #TARGET_BYTES}, given the
+ * observed size of the items.
+ * <p>
+ * Commands are identified by {@link #command(List, Map)}, so the menus of a command which differ a
+ * lot, like albums with artwork and text only genres of <code>browselibrary items</code>, are
+ * adapted separately.
+ */
+class PageSizeTuner {
+    static final int MIN_ITEMS = 32;
+    static final int MAX_ITEMS = 2048;
+
+    /** Time we want the server to take for a response, from publishing the request. */
+    static final long TARGET_MILLIS = 500;
+
+    /** Maximum size of the items of a response, as JSON. */
+    static final int TARGET_BYTES = 256 * 1024;
+
+    /** Parameters which select the menu of a command, see {@link #command(List, Map)}. */
+    private static final String[] MENU_PARAMS = {"mode"};
+
+    /** Number of items for a command we haven't seen a response to */
+    private final int defaultItems;
+
+    /** Number of items to request, by command. Guarded by itself. */
+    private final Map<String, Integer> mItemsPerResponse = new HashMap<>();
+
+    PageSizeTuner(int defaultItems) {
+        this.defaultItems = defaultItems;
+    }
+
+    /**
+     * @return The key of the supplied browse command: the command terms, and the parameters which
+     *     select the menu
+     */
+    @NonNull
+    static String command(List<String> cmd, Map<String, Object> params) {
+        StringBuilder sb = new StringBuilder(String.join(" ", cmd));
+        for (String param : MENU_PARAMS) {
+            Object value = params.get(param);
+            if (value != null) {
+                sb.append(' ').append(param).append(':').append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The number of items to request in a response to the supplied command
+     */
+    int getItemsPerResponse(@NonNull String command) {
+        synchronized (mItemsPerResponse) {
+            Integer items = mItemsPerResponse.get(command);
+            return (items != null ? items : defaultItems);
+        }
+    }
+
+    /**
+     * Adapt the size of the responses to the supplied command to a response received from the
+     * server.
+     *
+     * @param requested The number of items which were requested
+     * @param received The number of items in the response
+     * @param elapsed Milliseconds from publishing the request until the response arrived
+     * @param bytesPerItem Size of the items in the response as JSON, divided by the number of items
+     *
+     * @return The new number of items to request
+     */
+    int onResponse(@NonNull String command, int requested, int received, long elapsed, int bytesPerItem) {
+        synchronized (mItemsPerResponse) {
+            int items = getItemsPerResponse(command);
+            if (received <= 0) {
+                return items;
+            }
+
+            if (elapsed > TARGET_MILLIS) {
+                items = (int) (received * TARGET_MILLIS / elapsed);
+            } else if (elapsed < TARGET_MILLIS / 2 && received >= requested && requested >= items) {
+                // Only grow if the server gave us all we asked for, at the current size. Smaller
+                // responses, like the last items of a list, say little about larger ones.
+                items *= 2;
+            }
+            if (bytesPerItem > 0) {
+                items = Math.min(items, TARGET_BYTES / bytesPerItem);
+            }
+            items = Math.max(MIN_ITEMS, Math.min(items, MAX_ITEMS));
+
+            mItemsPerResponse.put(command, items);
+            return items;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        synchronized (mItemsPerResponse) {
+            return "PageSizeTuner{" + mItemsPerResponse + '}';
+        }
+    }
+}
@@ -55,25 +55,23 @@ interface SlimClient {
     /**
      * Send an asynchronous request to the SqueezeboxServer for the specified items.
      * <p>
-     * Items are requested in chunks of <code>R.integer.PageSize</code>, and returned
-     * to the caller via the specified callback.
-     * <p>
-     * If start is zero, this will order one item, to quickly learn the number of items
-     * from the server. When the server response with this item it is transferred to the
-     * caller. The remaining items in the first page are then ordered, and transferred
-     * to the caller when they arrive.
+     * Items are requested in chunks, and returned to the caller via the specified callback.
+     * The size of the chunks is adapted to how fast the server responds to the command,
+     * and how large the items are.
      * <p>
      * If start is < 0, it means the caller wants the entire list. They are ordered in
-     * pages, and transferred to the caller as they arrive.
+     * chunks, and transferred to the caller as they arrive.
      * <p>
-     * Otherwise request a page of items starting from start.
+     * Otherwise request the items from start to at least the end of the page containing start.
+     * Depending on the command, they may be received in more than one chunk, or with the items
+     * of the following pages. Each chunk is transferred to the caller when it arrives.
      * <p>
      *
      * @param player if non null this command is for a specific player
      * @param cmd Array of command terms, f.e. ['playlist', 'jump']
      * @param params Hash of parameters, f.e. {sort = new}. Passed to the server in the form "key:value", f.e. 'sort:new'.
-     * @param start index of the first item to fetch. -1 means to fetch all items in chunks of pageSize
-     * @param pageSize Number of items to fetch in each request.
+     * @param start index of the first item to fetch. -1 means to fetch all items
+     * @param pageSize Number of items in a page. Ignored if the entire list is fetched.
      * @param callback Received items are returned in this.
      */
     <T> void requestItems(Player player, String[] cmd, Map<String, Object> params, int start, int pageSize, IServiceItemListCallback<T> callback);
@@ -84,8 +82,23 @@ interface SlimClient {
      */
     void cancelClientRequests(Object client);
 
+    /**
+     * Notify that the specified client no longer wants the items from start (inclusive) to end
+     * (exclusive).
+     * @param client messages receiver
+     * @param start first position of the items which are not wanted anymore
+     * @param end position after the last item which is not wanted anymore
+     */
+    void cancelClientRequests(Object client, int start, int end);
+
     void requestPlayerStatus(Player player);
 
+    /**
+     * Request the status of the specified player, and run onStatus when it has been received. If
+     * the status doesn't arrive in a few seconds, onStatus is not run.
+     */
+    void requestPlayerStatus(Player player, Runnable onStatus);
+
     void subscribePlayerStatus(Player newActivePlayer, PlayerState.PlayerSubscriptionType subscriptionType);
     void subscribeDisplayStatus(Player player, boolean subscribe);
     void subscribeMenuStatus(Player player, boolean subscribe);
@@ -51,11 +51,19 @@ public class SlimDelegate {
         mClient.cancelClientRequests(client);
     }
 
+    void cancelClientRequests(Object client, int start, int end) {
+        mClient.cancelClientRequests(client, start, end);
+    }
+
 
     void requestPlayerStatus(Player player) {
         mClient.requestPlayerStatus(player);
     }
 
+    void requestPlayerStatus(Player player, Runnable onStatus) {
+        mClient.requestPlayerStatus(player, onStatus);
+    }
+
     void subscribePlayerStatus(Player player, PlayerState.PlayerSubscriptionType subscriptionType) {
         mClient.subscribePlayerStatus(player, subscriptionType);
     }
@@ -130,6 +138,10 @@ public class SlimDelegate {
         return mClient.getConnectionState().getPlayers();
     }
 
+    Set<Player> getSyncGroup() {
+        return mClient.getConnectionState().getSyncGroup();
+    }
+
     public Set<Player> getVolumeSyncGroup() {
         return mClient.getConnectionState().getVolumeSyncGroup();
     }
@@ -51,10 +51,14 @@ import android.telephony.TelephonyManager;
 import android.util.Log;
 import android.widget.RemoteViews;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -73,6 +77,7 @@ import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
 import uk.org.ngo.squeezer.model.Alarm;
 import uk.org.ngo.squeezer.model.AlarmPlaylist;
 import uk.org.ngo.squeezer.model.CurrentPlaylistItem;
+import uk.org.ngo.squeezer.model.PlaybackClock;
 import uk.org.ngo.squeezer.model.Player;
 import uk.org.ngo.squeezer.model.PlayerState;
 import uk.org.ngo.squeezer.model.Song;
@@ -80,10 +85,18 @@ import uk.org.ngo.squeezer.service.event.ConnectionChanged;
 import uk.org.ngo.squeezer.service.event.HandshakeComplete;
 import uk.org.ngo.squeezer.service.event.MusicChanged;
 import uk.org.ngo.squeezer.service.event.PlayStatusChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStateChanged;
+import uk.org.ngo.squeezer.service.event.PlayerStatusDelta;
 import uk.org.ngo.squeezer.service.event.PlayerVolume;
 import uk.org.ngo.squeezer.service.event.PlayersChanged;
+import uk.org.ngo.squeezer.service.event.PlaylistChanged;
+import uk.org.ngo.squeezer.service.event.PowerStatusChanged;
+import uk.org.ngo.squeezer.service.event.RepeatStatusChanged;
+import uk.org.ngo.squeezer.service.event.ShuffleStatusChanged;
+import uk.org.ngo.squeezer.service.event.SongTimeChanged;
 import uk.org.ngo.squeezer.util.ImageFetcher;
 import uk.org.ngo.squeezer.util.NotificationUtil;
+import uk.org.ngo.squeezer.util.PageCache;
 import uk.org.ngo.squeezer.util.Scrobble;
 
 /**
@@ -280,6 +293,7 @@ public class SqueezeService extends Service {
         super.onDestroy();
         disconnect(false);
         mEventBus.unregister(this);
+        mEventBus.logStats();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             try {
@@ -299,6 +313,8 @@ public class SqueezeService extends Service {
 
     void disconnect(boolean fromUser) {
         mDelegate.disconnect(fromUser);
+        // The next connection may be to another server
+        PageCache.getInstance().clear();
     }
 
     @Nullable public PlayerState getActivePlayerState() {
@@ -308,17 +324,35 @@ public class SqueezeService extends Service {
     }
 
     /**
-     * Updates the playing status of the current player.
+     * Updates the playing status and the current song of the current player.
      * <p>
-     * Updates the Wi-Fi lock and ongoing status notification as necessary.
+     * Updates the Wi-Fi lock and ongoing status notification as necessary, and continues random
+     * play when the song changes.
      */
-    public void onEvent(PlayStatusChanged event) {
+    public void onEvent(PlayerStatusDelta event) {
+        if (event.changed(PlayerState.CHANGED_SYNC) && event.player.equals(mDelegate.getActivePlayer())) {
+            // Players synced with the active player are notified on change
+            updateAllPlayerSubscriptionStates();
+        }
+        if (!event.changed(PlayerState.CHANGED_PLAY_STATUS | PlayerState.CHANGED_SONG | PlayerState.CHANGED_SONG_TIME)) {
+            return;
+        }
+
         if (event.player.equals(mDelegate.getActivePlayer())) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                int state = PlayerState.PLAY_STATE_PLAY.equals(event.playStatus) ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_STOPPED;
-                mMediaSession.setPlaybackState(new PlaybackStateCompat.Builder().setState(state, 0, 0).build());
+                // The media session advances the position itself, so it only needs the clock
+                int state = event.playerState.isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_STOPPED;
+                PlaybackClock clock = event.playerState.getPlaybackClock();
+                mMediaSession.setPlaybackState(new PlaybackStateCompat.Builder()
+                        .setState(state, (long) (clock.position * 1000), (float) clock.rate, (long) (clock.time * 1000))
+                        .build());
             }
-            updateOngoingNotification();
+            if (event.changed(PlayerState.CHANGED_PLAY_STATUS | PlayerState.CHANGED_SONG)) {
+                updateOngoingNotification();
+            }
+        }
+        if (event.changed(PlayerState.CHANGED_SONG) && event.player.isRandomPlaying()) {
+            handleRandomOnEvent(event.player);
         }
     }
 
@@ -390,17 +424,32 @@ public class SqueezeService extends Service {
      * Adjusts the subscription to players' status updates.
      */
     private void updateAllPlayerSubscriptionStates() {
+        Set<Player> syncGroup = mDelegate.getSyncGroup();
         for (Player player : mDelegate.getPlayers().values()) {
-            updatePlayerSubscription(player, calculateSubscriptionTypeFor(player));
+            updatePlayerSubscription(player, calculateSubscriptionTypeFor(player, syncGroup));
         }
     }
 
     /**
      * Determine the correct status subscription type for the given player, based on
      * how frequently we need to know its status.
+     * <p>
+     * The active player is always notified on change, as the UI, the ongoing notification and
+     * the media session follow it. So are the players synced with it, as the volume of the active
+     * player is computed from their volumes. Random play follows the songs of its player, so a
+     * player which plays randomly is also notified on change. Other players are only notified on
+     * change while a visible UI shows the status of all players, such as the player list.
+     * Otherwise their status is not subscribed to, and it is fetched again when they are
+     * subscribed to, when they become active or are shown, or before acting on it.
+     *
+     * @param syncGroup The active player and the players synced with it
      */
-    private PlayerState.PlayerSubscriptionType calculateSubscriptionTypeFor(Player player) {
-        return PlayerState.PlayerSubscriptionType.NOTIFY_ON_CHANGE;
+    private PlayerState.PlayerSubscriptionType calculateSubscriptionTypeFor(Player player, Set<Player> syncGroup) {
+        if (syncGroup.contains(player) || player.isRandomPlaying()
+                || mEventBus.hasAllPlayersSubscribers()) {
+            return PlayerState.PlayerSubscriptionType.NOTIFY_ON_CHANGE;
+        }
+        return PlayerState.PlayerSubscriptionType.NOTIFY_NONE;
     }
 
     /**
@@ -742,15 +791,6 @@ public class SqueezeService extends Service {
         mHandshakeComplete = true;
     }
 
-    public void onEvent(MusicChanged event) {
-        if (event.player.equals(mDelegate.getActivePlayer())) {
-            updateOngoingNotification();
-        }
-        if (event.player.isRandomPlaying()) {
-            handleRandomOnEvent(event.player);
-        }
-    }
-
     private void handleRandomOnEvent(Player player) {
 
         RandomPlay randomPlay = mDelegate.getRandomPlay(player);
@@ -763,6 +803,7 @@ public class SqueezeService extends Service {
         if (endRandomPlay(number, index)) {
             Log.v(TAG, "handleRandomOnEvent: End Random Play by not adding more tracks");
             randomPlay.reset(player);
+            updateAllPlayerSubscriptionStates();
         } else {
             String folderID = randomPlay.getActiveFolderID();
             Set<String> tracks = randomPlay.getTracks(folderID);
@@ -782,7 +823,7 @@ public class SqueezeService extends Service {
     }
 
     private boolean endRandomPlay(int number, int index) {
-        // After a MusicChanged event we have to check if this meant that the last track of random
+        // After the song changed we have to check if this meant that the last track of random
         // play is now playing. In this case we load another track. If the track changed but there
         // are more tracks in the playlist after it, it means that the user might have added tracks
         // to the end of the playlist. So we deactivate Random Play.
@@ -850,6 +891,11 @@ public class SqueezeService extends Service {
             }
         }
 
+        @Override
+        public boolean needsOrderedItems() {
+            return false;
+        }
+
         @Override
         public Object getClient() {
             return this;
@@ -873,6 +919,11 @@ public class SqueezeService extends Service {
             }
         }
 
+        @Override
+        public boolean needsOrderedItems() {
+            return false;
+        }
+
         @Override
         public Object getClient() {
             return this;
@@ -1134,6 +1185,16 @@ public class SqueezeService extends Service {
             if (player == null)
                 return false;
 
+            // The state of a player we don't subscribe to may be stale, so decide on a fresh status
+            if (player.getPlayerState().getSubscriptionType() == PlayerState.PlayerSubscriptionType.NOTIFY_NONE) {
+                mDelegate.requestPlayerStatus(player, () -> togglePausePlayFromStatus(player));
+                return true;
+            }
+
+            return togglePausePlayFromStatus(player);
+        }
+
+        private boolean togglePausePlayFromStatus(@NonNull Player player) {
             PlayerState activePlayerState = player.getPlayerState();
             @PlayerState.PlayState String playStatus = activePlayerState.getPlayStatus();
 
@@ -1387,6 +1448,11 @@ public class SqueezeService extends Service {
             mDelegate.cancelClientRequests(client);
         }
 
+        @Override
+        public void cancelItemListRequests(Object client, int start, int end) {
+            mDelegate.cancelClientRequests(client, start, end);
+        }
+
         @Override
         public void alarms(int start, IServiceItemListCallback<Alarm> callback) {
             if (!isConnected()) {
@@ -1558,54 +1624,170 @@ public class SqueezeService extends Service {
     }
 
     /**
-     * Calculate and set player subscription states every time a client of the bus
-     * un/registers.
+     * Calculate and set player subscription states when the set of clients of the bus which
+     * receive player status changes changes.
      * <p>
      * For example, this ensures that if a new client subscribes and needs real
      * time updates, the player subscription states will be updated accordingly.
+     * <p>
+     * Clients which receive {@link PlayerStateChanged} show the status of all players, other
+     * clients which receive player status events only that of the active player.
+     * <p>
+     * Posts are only logged and measured when verbose logging is enabled for the "EventBus" tag,
+     * f.e. with <code>adb shell setprop log.tag.EventBus VERBOSE</code> before the service is
+     * started. The counts and dispatch times per event type are logged when the service is
+     * destroyed.
      */
     class EventBus extends de.greenrobot.event.EventBus {
+        private static final String TAG = "EventBus";
+
+        /** Events with the status of players, see {@link #receivesPlayerStatus(Class)} */
+        private final Set<Class<?>> playerStatusEvents = new HashSet<>(Arrays.asList(
+                PlayerStatusDelta.class,
+                PlayStatusChanged.class,
+                MusicChanged.class,
+                PlayerStateChanged.class,
+                PlayerVolume.class,
+                PowerStatusChanged.class,
+                ShuffleStatusChanged.class,
+                RepeatStatusChanged.class,
+                PlaylistChanged.class,
+                SongTimeChanged.class
+        ));
+
+        private static final int RECEIVES_NONE = 0;
+        private static final int RECEIVES_ACTIVE_PLAYER = 1;
+        private static final int RECEIVES_ALL_PLAYERS = 2;
+
+        /** Which player status events subscriber classes receive, as RECEIVES_. Guarded by itself */
+        private final Map<Class<?>, Integer> receivesPlayerStatus = new HashMap<>();
+
+        /**
+         * Subscribers which receive player status events, and whether they receive it for all
+         * players. Guarded by itself
+         */
+        private final Map<Object, Boolean> playerStatusSubscribers = new IdentityHashMap<>();
+
+        /** Checked once, as {@link Log#isLoggable(String, int)} is comparatively slow */
+        private final boolean tracing = Log.isLoggable(TAG, Log.VERBOSE);
+
+        @Nullable
+        private final EventStats stats = tracing ? new EventStats() : null;
 
         @Override
         public void register(Object subscriber) {
             super.register(subscriber);
-            updateAllPlayerSubscriptionStates();
+            subscriberAdded(subscriber);
         }
 
         @Override
         public void register(Object subscriber, int priority) {
             super.register(subscriber, priority);
-            updateAllPlayerSubscriptionStates();
+            subscriberAdded(subscriber);
         }
 
         @Override
         public void post(Object event) {
-            Log.v("EventBus", "post() " + event.getClass().getSimpleName() + ": " + event);
+            if (!tracing) {
+                super.post(event);
+                return;
+            }
+            Log.v(TAG, "post() " + event.getClass().getSimpleName() + ": " + event);
+            long start = System.nanoTime();
             super.post(event);
+            stats.record(event.getClass(), System.nanoTime() - start);
         }
 
         @Override
         public void postSticky(Object event) {
-            Log.v("EventBus", "postSticky() " + event.getClass().getSimpleName() + ": " + event);
+            if (!tracing) {
+                super.postSticky(event);
+                return;
+            }
+            Log.v(TAG, "postSticky() " + event.getClass().getSimpleName() + ": " + event);
+            long start = System.nanoTime();
             super.postSticky(event);
+            stats.record(event.getClass(), System.nanoTime() - start);
         }
 
         @Override
         public void registerSticky(Object subscriber) {
             super.registerSticky(subscriber);
-            updateAllPlayerSubscriptionStates();
+            subscriberAdded(subscriber);
         }
 
         @Override
         public void registerSticky(Object subscriber, int priority) {
             super.registerSticky(subscriber, priority);
-            updateAllPlayerSubscriptionStates();
+            subscriberAdded(subscriber);
         }
 
         @Override
         public synchronized void unregister(Object subscriber) {
             super.unregister(subscriber);
-            updateAllPlayerSubscriptionStates();
+            Boolean allPlayers;
+            synchronized (playerStatusSubscribers) {
+                allPlayers = playerStatusSubscribers.remove(subscriber);
+            }
+            if (Boolean.TRUE.equals(allPlayers)) {
+                updateAllPlayerSubscriptionStates();
+            }
+        }
+
+        /**
+         * @return True if any registered subscriber receives the status of all players
+         */
+        boolean hasAllPlayersSubscribers() {
+            synchronized (playerStatusSubscribers) {
+                return playerStatusSubscribers.containsValue(true);
+            }
+        }
+
+        void logStats() {
+            if (tracing) {
+                Log.v(TAG, "Event stats:\n" + stats);
+            }
+        }
+
+        private void subscriberAdded(Object subscriber) {
+            // The service itself always receives player status
+            int receives = (subscriber == SqueezeService.this) ? RECEIVES_NONE : receivesPlayerStatus(subscriber.getClass());
+            if (receives == RECEIVES_NONE) {
+                return;
+            }
+            boolean added;
+            synchronized (playerStatusSubscribers) {
+                added = (playerStatusSubscribers.put(subscriber, receives == RECEIVES_ALL_PLAYERS) == null);
+            }
+            if (added && receives == RECEIVES_ALL_PLAYERS) {
+                updateAllPlayerSubscriptionStates();
+            }
+        }
+
+        /**
+         * @return Which player status events the supplied subscriber class has event handlers for,
+         *     as RECEIVES_. Handlers are found by the same naming convention as the event bus uses.
+         */
+        private int receivesPlayerStatus(Class<?> subscriberClass) {
+            synchronized (receivesPlayerStatus) {
+                Integer receives = receivesPlayerStatus.get(subscriberClass);
+                if (receives == null) {
+                    receives = RECEIVES_NONE;
+                    for (Method method : subscriberClass.getMethods()) {
+                        Class<?>[] parameterTypes = method.getParameterTypes();
+                        if (method.getName().startsWith("onEvent") && parameterTypes.length == 1
+                                && playerStatusEvents.contains(parameterTypes[0])) {
+                            if (parameterTypes[0] == PlayerStateChanged.class) {
+                                receives = RECEIVES_ALL_PLAYERS;
+                                break;
+                            }
+                            receives = RECEIVES_ACTIVE_PLAYER;
+                        }
+                    }
+                    receivesPlayerStatus.put(subscriberClass, receives);
+                }
+                return receives;
+            }
         }
     }
 
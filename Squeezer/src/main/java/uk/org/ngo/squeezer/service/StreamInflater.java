@@ -0,0 +1,171 @@
+package uk.org.ngo.squeezer.service;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Incrementally decompresses gzip or deflate encoded HTTP content, as it arrives.
+ * <p>
+ * Feed the compressed bytes with {@link #setInput(ByteBuffer)} and call {@link #inflate()} until
+ * it returns null before supplying more input. The gzip header is parsed here, because
+ * {@link Inflater} only understands the zlib format and raw deflate data. The gzip trailer is
+ * ignored. For the deflate encoding both zlib wrapped and raw deflate data, which some servers
+ * send, is accepted.
+ */
+class StreamInflater {
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final boolean gzip;
+    private Inflater inflater;
+    private byte[] input = new byte[0];
+    private final byte[] output;
+
+    /** Number of bytes of the gzip header processed, or -1 when the header is complete. */
+    private int headerPosition;
+    private int flags;
+    private int extraLength;
+
+    /**
+     * @param gzip True for the gzip content encoding, false for deflate
+     * @param bufferSize Maximum size of the buffers returned by {@link #inflate()}
+     */
+    StreamInflater(boolean gzip, int bufferSize) {
+        this.gzip = gzip;
+        output = new byte[bufferSize];
+        headerPosition = gzip ? 0 : -1;
+    }
+
+    /**
+     * @return A decoder for the supplied content coding, or null if it isn't supported
+     */
+    @Nullable
+    static StreamInflater forEncoding(String contentEncoding, int bufferSize) {
+        if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+            return new StreamInflater(true, bufferSize);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new StreamInflater(false, bufferSize);
+        }
+        return null;
+    }
+
+    /**
+     * Supply more compressed data. The buffer position is advanced to its limit.
+     *
+     * @throws DataFormatException If the data is not in the expected format
+     */
+    void setInput(ByteBuffer data) throws DataFormatException {
+        while (headerPosition >= 0 && data.hasRemaining()) {
+            parseHeader(data.get() & 0xff);
+        }
+        if (!data.hasRemaining()) {
+            return;
+        }
+
+        if (inflater == null) {
+            // A zlib header starts with compression method 8 (deflate), raw deflate data may not
+            inflater = new Inflater(gzip || (data.get(data.position()) & 0x0f) != 8);
+        }
+        int length = data.remaining();
+        if (input.length < length) {
+            input = new byte[length];
+        }
+        data.get(input, 0, length);
+        inflater.setInput(input, 0, length);
+    }
+
+    /**
+     * @return The next block of decompressed data, or null if more input is needed or the end of
+     *     the compressed data has been reached. The buffer is only valid until the next call.
+     * @throws DataFormatException If the data is not in the expected format
+     */
+    @Nullable
+    ByteBuffer inflate() throws DataFormatException {
+        if (inflater == null || inflater.finished()) {
+            return null;
+        }
+        int length = inflater.inflate(output);
+        if (length == 0) {
+            if (inflater.needsDictionary()) {
+                throw new DataFormatException("Preset dictionary is not supported");
+            }
+            return null;
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Release the native resources of the inflater.
+     */
+    void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    private void parseHeader(int b) throws DataFormatException {
+        int position = headerPosition++;
+        if (position == 0 && b != 0x1f || position == 1 && b != 0x8b) {
+            throw new DataFormatException("Not in gzip format");
+        }
+        if (position == 2 && b != 8) {
+            throw new DataFormatException("Unsupported compression method: " + b);
+        }
+        if (position == 3) {
+            flags = b;
+        }
+        if (position < 9) {
+            return;
+        }
+        if (position == 9) {
+            // End of the fixed part
+            nextHeaderField();
+            return;
+        }
+
+        // Optional fields in the order defined by RFC 1952
+        if ((flags & FEXTRA) != 0) {
+            if (position == 10) {
+                extraLength = b;
+            } else if (position == 11) {
+                extraLength |= b << 8;
+                if (extraLength == 0) {
+                    flags &= ~FEXTRA;
+                    nextHeaderField();
+                }
+            } else if (--extraLength == 0) {
+                flags &= ~FEXTRA;
+                nextHeaderField();
+            }
+        } else if ((flags & FNAME) != 0) {
+            if (b == 0) {
+                flags &= ~FNAME;
+                nextHeaderField();
+            }
+        } else if ((flags & FCOMMENT) != 0) {
+            if (b == 0) {
+                flags &= ~FCOMMENT;
+                nextHeaderField();
+            }
+        } else if ((flags & FHCRC) != 0) {
+            if (++extraLength == 2) {
+                flags &= ~FHCRC;
+                nextHeaderField();
+            }
+        }
+    }
+
+    /** Mark the header as complete, if no optional fields remain. */
+    private void nextHeaderField() {
+        extraLength = 0;
+        if ((flags & (FEXTRA | FNAME | FCOMMENT | FHCRC)) == 0) {
+            headerPosition = -1;
+        }
+    }
+}
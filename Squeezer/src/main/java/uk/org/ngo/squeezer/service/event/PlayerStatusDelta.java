@@ -0,0 +1,47 @@
+package uk.org.ngo.squeezer.service.event;
+
+import androidx.annotation.NonNull;
+
+import uk.org.ngo.squeezer.model.Player;
+import uk.org.ngo.squeezer.model.PlayerState;
+
+/**
+ * Event sent once for each status of a player, with all the parts of the player state which the
+ * status changed.
+ * <p>
+ * The individual events ({@link PlayStatusChanged}, {@link MusicChanged}, etc.) are still sent
+ * for the subscribers of them.
+ */
+public class PlayerStatusDelta {
+    /** The player with changed state. */
+    @NonNull
+    public final Player player;
+
+    /** The player's new state. */
+    @NonNull
+    public final PlayerState playerState;
+
+    /** The parts of the state which changed, as the CHANGED_ flags of {@link PlayerState}. */
+    public final int changes;
+
+    public PlayerStatusDelta(@NonNull Player player, int changes) {
+        this.player = player;
+        this.playerState = player.getPlayerState();
+        this.changes = changes;
+    }
+
+    /**
+     * @return True if any of the supplied CHANGED_ flags of {@link PlayerState} are set
+     */
+    public boolean changed(int flags) {
+        return (changes & flags) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PlayerStatusDelta{" +
+                "player=" + player +
+                ", changes=0x" + Integer.toHexString(changes) +
+                '}';
+    }
+}
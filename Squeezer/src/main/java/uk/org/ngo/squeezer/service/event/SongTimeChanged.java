@@ -20,7 +20,11 @@ import androidx.annotation.NonNull;
 
 import uk.org.ngo.squeezer.model.Player;
 
-/** Event sent when the duration or current play position of the current song has changed. */
+/**
+ * Event sent when the duration of the current song has changed, or the play position jumped or
+ * started or stopped advancing. In between, the position is derived from the
+ * {@link uk.org.ngo.squeezer.model.PlaybackClock} of the player.
+ */
 public class SongTimeChanged {
     /** The player with changed state. */
     @NonNull
@@ -0,0 +1,224 @@
+package uk.org.ngo.squeezer.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer for large numbers of timeouts which are usually cancelled before they expire.
+ * <p>
+ * Timeouts are kept in a wheel of buckets, each holding a doubly linked list of timeouts, so
+ * adding and cancelling a timeout are O(1) operations. A single thread advances the wheel one
+ * bucket per tick, and runs the timeouts in the bucket which are due. Timeouts therefore expire up
+ * to one tick late. The thread exits while no timeouts are pending, and is started again by the
+ * next timeout, so an idle timer holds no thread and doesn't need to be stopped.
+ * <p>
+ * Tasks are run on the timer thread, so they should be short. Exceptions thrown by a task are
+ * logged, and don't affect other tasks.
+ */
+public class HashedWheelTimer {
+    private static final String TAG = HashedWheelTimer.class.getSimpleName();
+
+    public interface Timeout {
+        /**
+         * Cancel this timeout.
+         *
+         * @return True if the timeout was pending, false if it has already expired or was cancelled
+         */
+        boolean cancel();
+    }
+
+    private final String name;
+    private final long tickMillis;
+    private final Entry[] wheel;
+    private final int mask;
+
+    private final Object lock = new Object();
+    private Thread thread;
+    private boolean stopped;
+
+    /** Number of ticks processed. */
+    private long tick;
+
+    /** Time at which the last tick was processed. */
+    private long tickTime;
+
+    /** Number of timeouts in the wheel. */
+    private int pending;
+
+    /**
+     * @param name Name of the timer thread
+     * @param tickMillis Duration of a tick, i.e. the resolution of the timer
+     * @param ticksPerWheel Number of buckets in the wheel, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+        }
+        this.name = name;
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        wheel = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Entry(null, 0);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Schedule a task to run after the supplied delay, unless it is cancelled first.
+     *
+     * @throws IllegalStateException If the timer has been stopped
+     */
+    public Timeout newTimeout(@NonNull Runnable task, long delayMillis) {
+        synchronized (lock) {
+            if (stopped) {
+                throw new IllegalStateException("Timer " + name + " is stopped");
+            }
+            long now = now();
+            if (pending == 0) {
+                // The timer thread doesn't tick while the wheel is empty
+                tickTime = now;
+            }
+
+            // Round up so we never expire early
+            long ticks = Math.max(1, (now + Math.max(0, delayMillis) - tickTime + tickMillis - 1) / tickMillis);
+            Entry entry = new Entry(task, (ticks - 1) / wheel.length);
+            entry.linkBefore(wheel[(int) ((tick + ticks) & mask)]);
+            pending++;
+
+            if (thread == null) {
+                thread = new Thread(this::run, name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+            return entry;
+        }
+    }
+
+    /**
+     * @return The number of timeouts which have neither expired nor been cancelled
+     */
+    public int pendingTimeouts() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Stop the timer thread, and discard all pending timeouts.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            for (Entry head : wheel) {
+                while (head.next != head) {
+                    head.next.unlink();
+                }
+            }
+            pending = 0;
+            lock.notifyAll();
+        }
+    }
+
+    private void run() {
+        List<Runnable> expired = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                try {
+                    if (stopped || pending == 0) {
+                        thread = null;
+                        return;
+                    }
+                    long delay = tickTime + tickMillis - now();
+                    if (delay > 0) {
+                        lock.wait(delay);
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                tickTime += tickMillis;
+                tick++;
+                Entry head = wheel[(int) (tick & mask)];
+                for (Entry entry = head.next; entry != head; ) {
+                    Entry next = entry.next;
+                    if (entry.rounds == 0) {
+                        entry.unlink();
+                        pending--;
+                        expired.add(entry.task);
+                    } else {
+                        entry.rounds--;
+                    }
+                    entry = next;
+                }
+            }
+
+            for (Runnable task : expired) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Timeout task failed in " + name, e);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * A timeout, or the sentinel head of the list of timeouts in a bucket.
+     * Access to the links must be guarded by the timer lock.
+     */
+    private class Entry implements Timeout {
+        private final Runnable task;
+        private long rounds;
+        private Entry prev = this;
+        private Entry next = this;
+
+        private Entry(Runnable task, long rounds) {
+            this.task = task;
+            this.rounds = rounds;
+        }
+
+        private void linkBefore(Entry head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = this;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (lock) {
+                if (next == this) {
+                    return false;
+                }
+                unlink();
+                pending--;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package uk.org.ngo.squeezer.util;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.BuildConfig;
+import uk.org.ngo.squeezer.model.Item;
+
+/**
+ * Process wide memory cache of the pages received by the list activities, so going back to a list
+ * doesn't have to order its pages again.
+ * <p>
+ * Pages are keyed by the identity of the request, see
+ * {@link uk.org.ngo.squeezer.framework.ItemListActivity#getRequestIdentity()}, and the start of
+ * the page. The cache is bounded by the estimated memory of the items.
+ * <p>
+ * Pages are not revalidated with the server, so lists must only cache pages which don't change
+ * while they are cached. The cache is cleared when the library scan state of the server changes,
+ * and pages are only used for a short time after they were received.
+ */
+public class PageCache {
+    private static final String TAG = PageCache.class.getSimpleName();
+
+    /** How long in milliseconds a page is used after it was received. */
+    private static final long MAX_AGE = 5 * 60_000;
+
+    /** Estimated memory of an item, excluding its name. */
+    private static final int ITEM_SIZE = 1024;
+
+    private static final PageCache instance = new PageCache((int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE));
+
+    private final LruCache<String, Page> mMemoryCache;
+
+    private PageCache(int maxSize) {
+        mMemoryCache = new LruCache<String, Page>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Page page) {
+                return page.size;
+            }
+        };
+    }
+
+    public static PageCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return The page stored for the supplied key, or null if there is none or it is too old
+     */
+    @Nullable
+    public Page get(String key) {
+        Page page = mMemoryCache.get(key);
+        if (page != null && SystemClock.elapsedRealtime() - page.received > MAX_AGE) {
+            mMemoryCache.remove(key);
+            return null;
+        }
+        return page;
+    }
+
+    public void put(String key, @NonNull Page page) {
+        mMemoryCache.put(key, page);
+    }
+
+    /**
+     * Remove all pages of the request with the supplied identity.
+     */
+    public void removeRequest(String requestIdentity) {
+        String prefix = requestIdentity + " ";
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * Release memory according to the level supplied to
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "onTrimMemory(" + level + "): " + mMemoryCache);
+        }
+    }
+
+    /**
+     * Items received for a request, as they were supplied to
+     * {@link uk.org.ngo.squeezer.itemlist.IServiceItemListCallback#onItemsReceived(int, int, Map, List, Class)}.
+     */
+    public static class Page {
+        public final int count;
+        public final int start;
+        public final Map<String, Object> parameters;
+        public final List<? extends Item> items;
+        public final Class<? extends Item> dataType;
+        private final long received = SystemClock.elapsedRealtime();
+        private final int size;
+
+        public <T extends Item> Page(int count, int start, Map<String, Object> parameters, List<T> items, Class<T> dataType) {
+            this.count = count;
+            this.start = start;
+            this.parameters = Collections.unmodifiableMap(parameters);
+            this.items = Collections.unmodifiableList(new ArrayList<>(items));
+            this.dataType = dataType;
+
+            int size = 0;
+            for (Item item : items) {
+                String name = item.getName();
+                size += ITEM_SIZE + (name != null ? 2 * name.length() : 0);
+            }
+            this.size = Math.max(size, 1);
+        }
+    }
+}
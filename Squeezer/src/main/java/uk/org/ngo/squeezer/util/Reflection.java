@@ -19,6 +19,8 @@ package uk.org.ngo.squeezer.util;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Reflection utility methods
@@ -26,12 +28,18 @@ import java.lang.reflect.TypeVariable;
  * @author kaa
  */
 public class Reflection {
+    /**
+     * Resolved type arguments per class and generic base. Classes don't change at runtime, so
+     * the (comparatively slow) resolution is only done once for each pair.
+     */
+    private static final Map<Class<?>, Map<Class<?>, Type[]>> resolvedTypes = new ConcurrentHashMap<>();
 
     /**
      * <p>Return the actual type parameter of the supplied class for the type variable at the
      * supplied position in the supplied base class or interface. <p>The method returns null if the
      * class can't be resolved. See {@link #genericTypeResolver(Class, Class)} for details on what
-     * can't be resolved, and how to work around it.
+     * can't be resolved, and how to work around it. <p>The resolved types are cached per class, so
+     * only the first call for a class is expensive.
      *
      * @param currentClass The current class which must extend or implement <code>base</code>
      * @param base Generic base class or interface which type variable we wish to resolve.
@@ -44,7 +52,9 @@ public class Reflection {
      */
     public static Class<?> getGenericClass(Class<?> currentClass,
             Class<?> base, int genericArgumentNumber) {
-        Type[] genericTypes = genericTypeResolver(currentClass, base);
+        Type[] genericTypes = resolvedTypes
+                .computeIfAbsent(currentClass, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(base, key -> genericTypeResolver(currentClass, key));
         Type type = genericArgumentNumber < genericTypes.length
                 ? genericTypes[genericArgumentNumber] : null;
 
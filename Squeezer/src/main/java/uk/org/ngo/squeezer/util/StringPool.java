@@ -0,0 +1,132 @@
+package uk.org.ngo.squeezer.util;
+
+import androidx.annotation.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of weakly referenced strings, to share one instance of strings which are received
+ * many times, such as artist and album names, item types and url prefixes.
+ * <p>
+ * The pool is a fixed size table indexed by the hash of the string. A string replaces the string
+ * in its slot if it isn't equal to it, so the pool never grows, and strings which are no longer
+ * used elsewhere can be garbage collected. Unlike {@link String#intern()} this may return a
+ * different instance for equal strings if they collide, which just means a missed deduplication.
+ * <p>
+ * This class is thread safe.
+ */
+public class StringPool {
+    /** Strings longer than this are rarely repeated, and expensive to compare */
+    private static final int MAX_LENGTH = 256;
+
+    private static final StringPool defaultPool = new StringPool(4096);
+
+    private final WeakReference<?>[] slots;
+    private final int mask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two
+     */
+    public StringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new WeakReference<?>[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return The pool shared by the model objects
+     */
+    public static StringPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * @return An instance from the pool which is equal to the supplied string, or the supplied
+     *     string, which is then added to the pool.
+     */
+    public String intern(String s) {
+        if (s == null || s.length() > MAX_LENGTH) {
+            return s;
+        }
+        if (s.isEmpty()) {
+            return "";
+        }
+
+        int hash = s.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        WeakReference<?> ref = slots[slot];
+        Object pooled = (ref != null) ? ref.get() : null;
+        if (s.equals(pooled)) {
+            hits.incrementAndGet();
+            return (String) pooled;
+        }
+        slots[slot] = new WeakReference<>(s);
+        misses.incrementAndGet();
+        return s;
+    }
+
+    /**
+     * Replace the string values of the supplied record, including nested records and arrays, with
+     * instances from the pool.
+     */
+    @SuppressWarnings("unchecked")
+    public void internValues(Map<String, Object> record) {
+        for (Map.Entry<String, Object> entry : record.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                entry.setValue(intern((String) value));
+            } else if (value instanceof Map) {
+                internValues((Map<String, Object>) value);
+            } else if (value instanceof Object[]) {
+                internValues((Object[]) value);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void internValues(Object[] array) {
+        for (int i = 0; i < array.length; i++) {
+            Object value = array[i];
+            if (value instanceof String) {
+                array[i] = intern((String) value);
+            } else if (value instanceof Map) {
+                internValues((Map<String, Object>) value);
+            } else if (value instanceof Object[]) {
+                internValues((Object[]) value);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The fraction of lookups which found a string in the pool
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return (lookups > 0) ? (double) hits / lookups : 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "StringPool{" +
+                "size=" + slots.length +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", hitRate=" + String.format("%.2f", getHitRate()) +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+package uk.org.ngo.squeezer.model;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class ItemFactoriesTest extends TestCase {
+
+    public void testRegisteredTypes() {
+        Class<?>[] types = {JiveItem.class, Song.class, MusicFolderItem.class, Alarm.class,
+                AlarmPlaylist.class, CurrentPlaylistItem.class};
+        Set<ItemFactory<?>> factories = new HashSet<>();
+        for (Class<?> type : types) {
+            ItemFactory<?> factory = ItemFactories.get(type);
+            assertNotNull(type.getName(), factory);
+            factories.add(factory);
+        }
+        assertEquals("Each type has its own factory", types.length, factories.size());
+    }
+
+    public void testUnregisteredType() {
+        assertNull(ItemFactories.get(Item.class));
+        assertNull(ItemFactories.get(Map.class));
+    }
+}
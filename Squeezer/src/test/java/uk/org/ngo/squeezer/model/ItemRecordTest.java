@@ -0,0 +1,131 @@
+package uk.org.ngo.squeezer.model;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ItemRecordTest extends TestCase {
+    private static final int ITEMS_PER_PAGE = 200;
+
+    /** A page of albums from browselibrary, shaped like the responses from LMS */
+    private static final String BASE = "{\"actions\":{"
+            + "\"go\":{\"cmd\":[\"browselibrary\",\"items\"],\"params\":{\"menu\":1,\"mode\":\"tracks\",\"useContextMenu\":1},\"itemsParams\":\"commonParams\"},"
+            + "\"play\":{\"cmd\":[\"jiveplaytrackalbum\"],\"params\":{\"cmd\":\"load\"},\"itemsParams\":\"commonParams\",\"nextWindow\":\"nowPlaying\"},"
+            + "\"add\":{\"cmd\":[\"jiveplaytrackalbum\"],\"params\":{\"cmd\":\"add\"},\"itemsParams\":\"commonParams\"},"
+            + "\"add-hold\":{\"cmd\":[\"jiveplaytrackalbum\"],\"params\":{\"cmd\":\"insert\"},\"itemsParams\":\"commonParams\"},"
+            + "\"more\":{\"cmd\":[\"contextmenu\"],\"params\":{\"menu\":\"album\",\"context\":\"browselibrary\"},\"itemsParams\":\"commonParams\",\"window\":{\"isContextMenu\":1}}"
+            + "},\"window\":{\"menuStyle\":\"album\",\"windowStyle\":\"icon_list\"}}";
+
+    private static String item(int i) {
+        return "{\"text\":\"Album " + i + "\\nArtist " + (i % 17) + "\",\"icon-id\":\"/music/" + (1000 + i) + "/cover\","
+                + "\"textkey\":\"" + (char) ('A' + i % 26) + "\",\"type\":\"playlist\",\"favorites_url\":\"db:album.title=Album%20" + i + "\","
+                + "\"commonParams\":{\"album_id\":" + i + ",\"artist_id\":" + (i % 17) + "}}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> page() {
+        JSON json = new JSON();
+        Map<String, Object> base = (Map<String, Object>) json.fromJSON(BASE);
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_PAGE; i++) {
+            Map<String, Object> record = (Map<String, Object>) json.fromJSON(item(i));
+            record.put("base", base);
+            records.add(record);
+        }
+        return records;
+    }
+
+    public void testMaterialize() {
+        List<Map<String, Object>> page = page();
+        Map<String, Object> record = page.get(0);
+        ItemRecord itemRecord = new ItemRecord(record);
+        ItemRecord other = new ItemRecord(page.get(1));
+
+        Map<String, Object> materialized = itemRecord.materialize();
+        assertEquals(record, materialized);
+        assertSame("Base record is shared", record.get("base"), materialized.get("base"));
+        assertSame(materialized.get("base"), other.materialize().get("base"));
+
+        materialized.put("weight", 10);
+        assertFalse(itemRecord.materialize().containsKey("weight"));
+
+        try {
+            ((Map<String, Object>) materialized.get("commonParams")).put("album_id", 1);
+            fail("Nested maps are immutable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    public void testWith() {
+        Map<String, Object> record = page().get(0);
+        ItemRecord itemRecord = new ItemRecord(record);
+        ItemRecord weighted = itemRecord.with("weight", 2000);
+
+        assertEquals(2000, weighted.materialize().get("weight"));
+        assertNull(itemRecord.materialize().get("weight"));
+        assertSame(record.get("base"), weighted.materialize().get("base"));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSharedTemplates() {
+        List<Map<String, Object>> page = page();
+        ActionTemplates templates = new ActionTemplates((Map<String, Object>) page.get(0).get("base"));
+        ItemRecord itemRecord = new ItemRecord(page.get(0), templates);
+        ItemRecord other = new ItemRecord(page.get(1), templates);
+
+        assertSame(templates, itemRecord.templates());
+        assertSame(templates, other.templates());
+        assertSame(templates, itemRecord.with("weight", 2000).templates());
+        assertSame(page.get(0).get("base"), itemRecord.materialize().get("base"));
+
+        // Without templates, they are prepared for each record
+        assertNotSame(new ItemRecord(page.get(0)).templates(), new ItemRecord(page.get(1)).templates());
+    }
+
+    public void testWithoutBase() {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", "home");
+        record.put("weight", 1);
+        assertEquals(record, new ItemRecord(record).materialize());
+    }
+
+    /**
+     * The records of a page don't hold their own copy of the base record, nor of the keys which
+     * repeat across the records.
+     */
+    @SuppressWarnings("unchecked")
+    public void testSharedStructure() {
+        List<Map<String, Object>> page = page();
+        Map<String, Object> fields = new ItemRecord(page.get(0)).fields();
+        Map<String, Object> otherFields = new ItemRecord(page.get(1)).fields();
+
+        assertFalse(fields.containsKey("base"));
+        assertEquals(otherFields.keySet(), fields.keySet());
+        for (String key : fields.keySet()) {
+            assertSame(key, sameKey(otherFields, key));
+        }
+
+        Map<String, Object> params = (Map<String, Object>) fields.get("commonParams");
+        Map<String, Object> otherParams = (Map<String, Object>) otherFields.get("commonParams");
+        for (String key : params.keySet()) {
+            assertSame(key, sameKey(otherParams, key));
+        }
+    }
+
+    /**
+     * @return The key of the supplied map which is equal to the supplied key
+     */
+    private static String sameKey(Map<String, Object> map, String key) {
+        for (String mapKey : map.keySet()) {
+            if (mapKey.equals(key)) {
+                return mapKey;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package uk.org.ngo.squeezer.model;
+
+import junit.framework.TestCase;
+
+public class PlaybackClockTest extends TestCase {
+
+    public void testGetPosition() {
+        PlaybackClock clock = new PlaybackClock(10, 100, 1);
+        assertEquals(10.0, clock.getPosition(100), 0.001);
+        assertEquals(15.5, clock.getPosition(105.5), 0.001);
+        assertEquals(10.0, clock.getPosition(99), 0.001);
+
+        PlaybackClock paused = new PlaybackClock(10, 100, 0);
+        assertEquals(10.0, paused.getPosition(200), 0.001);
+    }
+
+    public void testMillisToNextSecond() {
+        assertEquals(750, new PlaybackClock(10.25, 100, 1).millisToNextSecond(100));
+        assertEquals(500, new PlaybackClock(10, 100, 1).millisToNextSecond(100.5));
+        assertEquals(1000, new PlaybackClock(10, 100, 1).millisToNextSecond(100));
+        assertEquals(-1, new PlaybackClock(10, 100, 0).millisToNextSecond(100));
+    }
+
+    public void testIsContinuedBy() {
+        PlaybackClock clock = new PlaybackClock(10, 100, 1);
+        assertTrue(clock.isContinuedBy(new PlaybackClock(20.4, 110, 1)));
+        assertFalse("seek", clock.isContinuedBy(new PlaybackClock(60, 110, 1)));
+        assertFalse("pause", clock.isContinuedBy(new PlaybackClock(20, 110, 0)));
+        assertFalse("track change", clock.isContinuedBy(new PlaybackClock(0, 110, 1)));
+        assertTrue(PlaybackClock.STOPPED.isContinuedBy(new PlaybackClock(0, 110, 0)));
+        assertFalse(PlaybackClock.STOPPED.isContinuedBy(new PlaybackClock(0, 110, 1)));
+    }
+}
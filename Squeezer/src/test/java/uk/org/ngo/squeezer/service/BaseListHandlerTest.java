@@ -0,0 +1,37 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.model.ItemFactories;
+
+public class BaseListHandlerTest extends TestCase {
+
+    /** A type without a registered factory */
+    public static class RecordItem {
+        final Object id;
+
+        public RecordItem(Map<String, Object> record) {
+            id = record.get("id");
+        }
+    }
+
+    public void testReflectiveFallback() {
+        assertNull(ItemFactories.get(RecordItem.class));
+
+        BaseListHandler<RecordItem> handler = new BaseListHandler<RecordItem>() {};
+        assertEquals(RecordItem.class, handler.getDataType());
+
+        handler.clear();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("id", String.valueOf(i));
+            handler.add(record);
+        }
+        assertEquals(3, handler.getItems().size());
+        assertEquals("0", handler.getItems().get(0).id);
+        assertEquals("2", handler.getItems().get(2).id);
+    }
+}
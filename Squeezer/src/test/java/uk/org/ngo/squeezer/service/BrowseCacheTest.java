@@ -0,0 +1,76 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.util.Map;
+
+public class BrowseCacheTest extends TestCase {
+    private static final int PAGE_SIZE = 4;
+    private static final int COUNT = 10;
+
+    /**
+     * Parse a response to a request for the items from start to end, with the fields in the
+     * supplied order, as the server may send them.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> response(int start, int end, boolean countFirst) {
+        StringBuilder items = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) items.append(',');
+            items.append("{\"id\":\"").append(i).append("\",\"album\":\"Album ").append(i).append("\"}");
+        }
+        String count = "\"count\":" + COUNT;
+        String loop = "\"albums_loop\":[" + items + "]";
+        String other = "\"title\":\"Albums\"";
+        String json = countFirst
+                ? "{" + count + "," + other + "," + loop + "}"
+                : "{" + loop + "," + other + "," + count + "}";
+        return (Map<String, Object>) new JSON().fromJSON(json);
+    }
+
+    private static Map<Integer, String> pages(Map<String, Object> data, int start) {
+        return BrowseCache.pages(data, start, PAGE_SIZE, "count", "albums_loop");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int itemCount(String page) {
+        return ((Object[]) ((Map<String, Object>) new JSON().fromJSON(page)).get("albums_loop")).length;
+    }
+
+    public void testSplit() {
+        Map<Integer, String> pages = pages(response(0, COUNT, true), 0);
+
+        assertEquals("[0, 4, 8]", pages.keySet().toString());
+        assertEquals(PAGE_SIZE, itemCount(pages.get(0)));
+        assertEquals(PAGE_SIZE, itemCount(pages.get(4)));
+        assertEquals(2, itemCount(pages.get(8)));
+    }
+
+    public void testChunksAreNotPages() {
+        assertEquals("[0]", pages(response(0, 6, true), 0).keySet().toString());
+        assertTrue(pages(response(2, 6, true), 2).isEmpty());
+    }
+
+    /**
+     * A page compares equal to the same page in a later response, whether it was split from a
+     * larger response or received alone, so an unchanged page is recognized.
+     */
+    public void testRefetchedPageIsEqual() {
+        Map<Integer, String> pages = pages(response(0, COUNT, true), 0);
+
+        assertEquals(pages.get(4), pages(response(4, 8, false), 4).get(4));
+        assertEquals(pages.get(4), pages(response(4, COUNT, false), 4).get(4));
+        assertEquals(pages.get(8), pages(response(8, COUNT, false), 8).get(8));
+        assertEquals(pages.get(0), pages(response(0, 4, true), 0).get(0));
+    }
+
+    public void testChangedPageIsNotEqual() {
+        Map<Integer, String> pages = pages(response(0, COUNT, true), 0);
+        Map<String, Object> changed = response(4, 8, true);
+        changed.put("albums_loop", response(3, 7, true).get("albums_loop"));
+
+        assertFalse(pages.get(4).equals(pages(changed, 4).get(4)));
+    }
+}
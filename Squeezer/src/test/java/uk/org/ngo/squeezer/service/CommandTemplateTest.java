@@ -0,0 +1,99 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jetty.util.ajax.JSON;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CommandTemplateTest extends TestCase {
+    private final CommandTemplate template = new CommandTemplate("mixer", "volume");
+
+    public void testMatches() {
+        assertTrue(template.matches(new String[]{"mixer", "volume", "50"}));
+        assertFalse(template.matches(new String[]{"mixer", "volume"}));
+        assertFalse(template.matches(new String[]{"mixer", "muting", "1"}));
+    }
+
+    public void testLiteral() {
+        assertEquals(JSON.toString(new Object[]{"mixer", "volume", "50"}), template.literal("50").toString());
+        assertEquals(JSON.toString(new Object[]{"mixer", "volume", "1000"}), template.literal("1000").toString());
+        assertEquals(JSON.toString(new Object[]{"mixer", "volume", "05"}), template.literal("05").toString());
+        assertSame(template.literal("7"), template.literal("7"));
+
+        assertNull(template.literal("?"));
+        assertNull(template.literal("+5"));
+        assertNull(template.literal("-5"));
+        assertNull(template.literal(""));
+    }
+
+    /**
+     * A request with a template serializes to the same JSON as the request built from the
+     * command terms.
+     */
+    public void testRequestJson() {
+        for (String value : new String[]{"0", "50", "127", "128", "1000"}) {
+            String[] cmd = {"mixer", "volume", value};
+            assertEquals(JSON.toString(genericRequest(cmd)),
+                    JSON.toString(new Object[]{"00:04:20:12:34:56", template.literal(value)}));
+        }
+    }
+
+    /**
+     * The published command has the parameters without values, then the paging parameters and
+     * then the parameters with values, each in the order of the parameter map.
+     */
+    public void testSlimCommandOrder() {
+        List<String> cmd = Arrays.asList("browselibrary", "items");
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("mode", "albums");
+        params.put("wantMetadata", null);
+        params.put("useContextMenu", 1);
+        params.put("sort", null);
+        params.put("tags", "aljt");
+
+        assertEquals(JSON.toString(new Object[]{"00:04:20:12:34:56", new Object[]{"browselibrary", "items",
+                        "wantMetadata", "sort", "0", "512", "mode:albums", "useContextMenu:1", "tags:aljt"}}),
+                JSON.toString(new Object[]{"00:04:20:12:34:56", CommandTemplate.slimCommand(cmd, params, "0", "512")}));
+        assertEquals(JSON.toString(new Object[]{"browselibrary", "items", "wantMetadata", "sort",
+                        "mode:albums", "useContextMenu:1", "tags:aljt"}),
+                JSON.toString(CommandTemplate.slimCommand(cmd, params, null, null)));
+        assertEquals(JSON.toString(new Object[]{"status", "-", "1"}),
+                JSON.toString(CommandTemplate.slimCommand(Arrays.asList("status"), new HashMap<>(), "-", "1")));
+
+        // Same as the map based request for any map order
+        Map<String, Object> hashParams = new HashMap<>(params);
+        assertEquals(JSON.toString(mapBasedRequest(cmd, hashParams, "0", "512")),
+                JSON.toString(new Object[]{"00:04:20:12:34:56", CommandTemplate.slimCommand(cmd, hashParams, "0", "512")}));
+    }
+
+    /** A slim request as it was built from the parameter map, before the command was an array */
+    private static List<Object> mapBasedRequest(List<String> cmd, Map<String, Object> params, String start, String page) {
+        List<Object> slimRequest = new ArrayList<>();
+        slimRequest.add("00:04:20:12:34:56");
+        List<String> inner = new ArrayList<>(cmd);
+        slimRequest.add(inner);
+        for (Map.Entry<String, Object> parameter : params.entrySet()) {
+            if (parameter.getValue() == null) inner.add(parameter.getKey());
+        }
+        inner.add(start);
+        inner.add(page);
+        for (Map.Entry<String, Object> parameter : params.entrySet()) {
+            if (parameter.getValue() != null) inner.add(parameter.getKey() + ":" + parameter.getValue());
+        }
+        return slimRequest;
+    }
+
+    /** A slim request as it is built without a template */
+    private static List<Object> genericRequest(String[] cmd) {
+        List<Object> slimRequest = new ArrayList<>();
+        slimRequest.add("00:04:20:12:34:56");
+        slimRequest.add(Arrays.asList(cmd));
+        return slimRequest;
+    }
+}
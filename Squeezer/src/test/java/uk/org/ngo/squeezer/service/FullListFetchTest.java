@@ -0,0 +1,130 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.org.ngo.squeezer.itemlist.IServiceItemListCallback;
+
+public class FullListFetchTest extends TestCase {
+    private final List<int[]> requested = new ArrayList<>();
+    private final List<String> delivered = new ArrayList<>();
+
+    private final FullListFetch.RangeRequester<Integer> requester = new FullListFetch.RangeRequester<Integer>() {
+        @Override
+        public int itemsPerResponse(int start, int end) {
+            return Math.min(10, end - start);
+        }
+
+        @Override
+        public void requestRange(FullListFetch<Integer> fetch, int start, int itemsPerResponse) {
+            requested.add(new int[]{start, itemsPerResponse});
+        }
+    };
+
+    private IServiceItemListCallback<Integer> callback(boolean ordered) {
+        return new IServiceItemListCallback<Integer>() {
+            @Override
+            public void onItemsReceived(int count, int start, Map<String, Object> parameters, List<Integer> items, Class<Integer> dataType) {
+                delivered.add(start + "+" + items.size());
+            }
+
+            @Override
+            public void onItemsFailed(int start, Throwable failure) {
+                delivered.add(start + " failed");
+            }
+
+            @Override
+            public boolean needsOrderedItems() {
+                return ordered;
+            }
+
+            @Override
+            public Object getClient() {
+                return this;
+            }
+        };
+    }
+
+    private static List<Integer> items(int size) {
+        return new ArrayList<>(Collections.nCopies(size, 0));
+    }
+
+    private void receive(FullListFetch<Integer> fetch, int start, int size) {
+        fetch.onItemsReceived(start, 45, Collections.emptyMap(), items(size), Integer.class);
+    }
+
+    private String requestedRanges() {
+        StringBuilder sb = new StringBuilder();
+        for (int[] range : requested) {
+            sb.append(range[0]).append('+').append(range[1]).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    public void testWindow() {
+        FullListFetch<Integer> fetch = new FullListFetch<>(callback(true), requester, 5, 45, 2);
+        fetch.start();
+        assertEquals("5+10 15+10", requestedRanges());
+
+        receive(fetch, 5, 10);
+        assertEquals("5+10 15+10 25+10", requestedRanges());
+
+        receive(fetch, 15, 10);
+        receive(fetch, 25, 10);
+        assertEquals("5+10 15+10 25+10 35+10", requestedRanges());
+    }
+
+    public void testOrdered() {
+        FullListFetch<Integer> fetch = new FullListFetch<>(callback(true), requester, 5, 45, 3);
+        fetch.start();
+
+        receive(fetch, 25, 10);
+        receive(fetch, 15, 10);
+        assertTrue(delivered.isEmpty());
+
+        receive(fetch, 5, 10);
+        assertEquals("[5+10, 15+10, 25+10]", delivered.toString());
+
+        receive(fetch, 35, 10);
+        assertEquals("[5+10, 15+10, 25+10, 35+10]", delivered.toString());
+    }
+
+    public void testUnordered() {
+        FullListFetch<Integer> fetch = new FullListFetch<>(callback(false), requester, 5, 45, 3);
+        fetch.start();
+
+        receive(fetch, 25, 10);
+        receive(fetch, 15, 10);
+        assertEquals("[25+10, 15+10]", delivered.toString());
+    }
+
+    public void testShortRange() {
+        FullListFetch<Integer> fetch = new FullListFetch<>(callback(true), requester, 5, 45, 2);
+        fetch.start();
+
+        receive(fetch, 15, 10);
+        receive(fetch, 5, 4);
+        assertEquals("5+10 15+10 25+10 9+6", requestedRanges());
+        assertEquals("[5+4]", delivered.toString());
+
+        receive(fetch, 9, 6);
+        assertEquals("[5+4, 9+6, 15+10]", delivered.toString());
+    }
+
+    public void testFailure() {
+        FullListFetch<Integer> fetch = new FullListFetch<>(callback(true), requester, 5, 45, 2);
+        fetch.start();
+
+        receive(fetch, 15, 10);
+        fetch.onItemsFailed(5, new RuntimeException());
+        assertEquals("[5 failed, 15+10]", delivered.toString());
+
+        // A late response for a range which failed is ignored
+        receive(fetch, 5, 10);
+        assertEquals("[5 failed, 15+10]", delivered.toString());
+    }
+}
@@ -0,0 +1,88 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JsonFramerTest extends TestCase {
+    private final JsonFramer framer = new JsonFramer();
+    private final List<String> frames = new ArrayList<>();
+
+    private void append(String... chunks) throws ParseException {
+        for (String chunk : chunks) {
+            framer.append(chunk, frames::add);
+        }
+    }
+
+    public void testSingleChunk() throws ParseException {
+        append("[{\"channel\":\"/meta/connect\"}]");
+        assertEquals(Arrays.asList("[{\"channel\":\"/meta/connect\"}]"), frames);
+        assertFalse(framer.hasPartialFrame());
+    }
+
+    public void testSplitOverChunks() throws ParseException {
+        append("[{\"data\":{\"item_", "loop\":[1,2", ",3]}}", "]");
+        assertEquals(Arrays.asList("[{\"data\":{\"item_loop\":[1,2,3]}}]"), frames);
+    }
+
+    public void testSeveralFramesInOneChunk() throws ParseException {
+        append("[{\"a\":1}] [{\"b\":2}]\r\n[{\"c\"", ":3}]");
+        assertEquals(Arrays.asList("[{\"a\":1}]", "[{\"b\":2}]", "[{\"c\":3}]"), frames);
+    }
+
+    public void testBracketsInStrings() throws ParseException {
+        append("[{\"text\":\"a ] } [ {\"}", ",{\"text\":\"quote \\\" ]\"}]");
+        assertEquals(Arrays.asList("[{\"text\":\"a ] } [ {\"},{\"text\":\"quote \\\" ]\"}]"), frames);
+    }
+
+    public void testEscapeAcrossChunks() throws ParseException {
+        append("[\"back\\", "\"slash]\"]");
+        assertEquals(Arrays.asList("[\"back\\\"slash]\"]"), frames);
+    }
+
+    public void testPartialFrame() throws ParseException {
+        append("[{\"a\":");
+        assertTrue(frames.isEmpty());
+        assertTrue(framer.hasPartialFrame());
+        framer.reset();
+        append("{}");
+        assertEquals(Arrays.asList("{}"), frames);
+    }
+
+    public void testInvalid() {
+        try {
+            append("]");
+            fail("Expected ParseException");
+        } catch (ParseException expected) {
+        }
+        try {
+            append("true");
+            fail("Expected ParseException");
+        } catch (ParseException expected) {
+        }
+        assertFalse(framer.hasPartialFrame());
+    }
+
+    public void testBytesSplitInsideCharacter() throws ParseException {
+        byte[] bytes = "[{\"title\":\"Sigur R\u00f3s \u2013 \u00c1g\u00e6tis byrjun\"}][]".getBytes(StandardCharsets.UTF_8);
+        // Split in the middle of each multi-byte sequence
+        for (int i = 0; i < bytes.length; i++) {
+            framer.append(ByteBuffer.wrap(bytes, i, 1), frames::add);
+        }
+        assertEquals(Arrays.asList("[{\"title\":\"Sigur R\u00f3s \u2013 \u00c1g\u00e6tis byrjun\"}]", "[]"), frames);
+    }
+
+    public void testBytesBufferConsumed() throws ParseException {
+        ByteBuffer buffer = ByteBuffer.wrap("[1][2".getBytes(StandardCharsets.UTF_8));
+        framer.append(buffer, frames::add);
+        assertFalse(buffer.hasRemaining());
+        assertTrue(framer.hasPartialFrame());
+        framer.append(ByteBuffer.wrap("]".getBytes(StandardCharsets.UTF_8)), frames::add);
+        assertEquals(Arrays.asList("[1]", "[2]"), frames);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PageSizeTunerTest extends TestCase {
+    private final PageSizeTuner tuner = new PageSizeTuner(512);
+
+    public void testDefault() {
+        assertEquals(512, tuner.getItemsPerResponse("albums"));
+    }
+
+    public void testGrowsForFastResponses() {
+        assertEquals(1024, tuner.onResponse("albums", 512, 512, 100, 50));
+        assertEquals(2048, tuner.onResponse("albums", 1024, 1024, 200, 50));
+        assertEquals(PageSizeTuner.MAX_ITEMS, tuner.onResponse("albums", 2048, 2048, 200, 50));
+        assertEquals(512, tuner.getItemsPerResponse("titles"));
+    }
+
+    public void testDoesNotGrowForShortResponses() {
+        // The end of the list, or a chunk smaller than the current size
+        assertEquals(512, tuner.onResponse("albums", 512, 100, 50, 200));
+        assertEquals(512, tuner.onResponse("albums", 100, 100, 50, 200));
+    }
+
+    public void testShrinksForSlowResponses() {
+        assertEquals(256, tuner.onResponse("spotty items", 512, 512, 1000, 200));
+        assertEquals(128, tuner.onResponse("spotty items", 256, 256, 1000, 200));
+        assertEquals(PageSizeTuner.MIN_ITEMS, tuner.onResponse("spotty items", 128, 128, 10_000, 200));
+    }
+
+    public void testLimitedByItemSize() {
+        assertEquals(PageSizeTuner.TARGET_BYTES / 2048, tuner.onResponse("spotty items", 512, 512, 100, 2048));
+    }
+
+    public void testIgnoresEmptyResponses() {
+        assertEquals(512, tuner.onResponse("albums", 512, 0, 10_000, 0));
+    }
+
+    public void testMenusOfACommand() {
+        String albums = PageSizeTuner.command(Arrays.asList("browselibrary", "items"), params("albums"));
+        String genres = PageSizeTuner.command(Arrays.asList("browselibrary", "items"), params("genres"));
+        assertEquals("browselibrary items mode:albums", albums);
+        assertFalse(albums.equals(genres));
+        assertEquals(albums, PageSizeTuner.command(Arrays.asList("browselibrary", "items"), params("albums")));
+
+        // Slow albums with artwork don't make the text only genres slower
+        assertEquals(256, tuner.onResponse(albums, 512, 512, 1000, 200));
+        assertEquals(1024, tuner.onResponse(genres, 512, 512, 100, 50));
+        assertEquals(256, tuner.getItemsPerResponse(albums));
+    }
+
+    private static Map<String, Object> params(String mode) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("menu", 1);
+        params.put("mode", mode);
+        params.put("useContextMenu", 1);
+        return params;
+    }
+}
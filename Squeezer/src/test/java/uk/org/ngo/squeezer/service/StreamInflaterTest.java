@@ -0,0 +1,83 @@
+package uk.org.ngo.squeezer.service;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class StreamInflaterTest extends TestCase {
+    private static final String CONTENT = "[{\"channel\":\"/slim/request\",\"data\":{\"count\":42}}]";
+
+    public void testGzip() throws Exception {
+        assertEquals(CONTENT, inflate(StreamInflater.forEncoding("gzip", 16), gzip(CONTENT), 1));
+        assertEquals(CONTENT, inflate(StreamInflater.forEncoding("GZIP", 1024), gzip(CONTENT), 1024));
+    }
+
+    public void testGzipOptionalHeaderFields() throws Exception {
+        byte[] compressed = gzip(CONTENT);
+        byte[] header = {0x1f, (byte) 0x8b, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, (byte) 255,
+                3, 0, 'a', 'b', 'c',
+                'n', 'a', 'm', 'e', 0,
+                'c', 0};
+        byte[] data = new byte[header.length + compressed.length - 10];
+        System.arraycopy(header, 0, data, 0, header.length);
+        System.arraycopy(compressed, 10, data, header.length, compressed.length - 10);
+
+        assertEquals(CONTENT, inflate(StreamInflater.forEncoding("gzip", 16), data, 1));
+    }
+
+    public void testDeflate() throws Exception {
+        assertEquals(CONTENT, inflate(StreamInflater.forEncoding("deflate", 16), deflate(CONTENT, false), 3));
+        assertEquals(CONTENT, inflate(StreamInflater.forEncoding("deflate", 16), deflate(CONTENT, true), 3));
+    }
+
+    public void testUnsupported() {
+        assertNull(StreamInflater.forEncoding("br", 16));
+    }
+
+    public void testInvalid() throws Exception {
+        try {
+            inflate(StreamInflater.forEncoding("gzip", 16), CONTENT.getBytes(StandardCharsets.UTF_8), 16);
+            fail("Expected DataFormatException");
+        } catch (DataFormatException expected) {
+        }
+    }
+
+    /** Feed the data in pieces of the supplied size, and return the decompressed text. */
+    private static String inflate(StreamInflater inflater, byte[] data, int pieceSize) throws DataFormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < data.length; i += pieceSize) {
+            ByteBuffer input = ByteBuffer.wrap(data, i, Math.min(pieceSize, data.length - i));
+            inflater.setInput(input);
+            assertFalse(input.hasRemaining());
+            ByteBuffer output;
+            while ((output = inflater.inflate()) != null) {
+                out.write(output.array(), output.position(), output.remaining());
+            }
+        }
+        inflater.end();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(String content, boolean raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,61 @@
+package uk.org.ngo.squeezer.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HashedWheelTimerTest extends TestCase {
+    private HashedWheelTimer timer;
+
+    @Override
+    protected void setUp() {
+        timer = new HashedWheelTimer("test", 10, 4);
+    }
+
+    @Override
+    protected void tearDown() {
+        timer.stop();
+    }
+
+    public void testExpires() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        long start = System.nanoTime();
+        timer.newTimeout(latch::countDown, 30);
+        // Longer than a full revolution of the wheel
+        timer.newTimeout(latch::countDown, 100);
+        assertEquals(2, timer.pendingTimeouts());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    public void testCancel() throws InterruptedException {
+        AtomicInteger expired = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(expired::incrementAndGet, 20);
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.newTimeout(latch::countDown, 50);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(1, timer.pendingTimeouts());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, expired.get());
+    }
+
+    public void testIdle() throws InterruptedException {
+        CountDownLatch first = new CountDownLatch(1);
+        timer.newTimeout(first::countDown, 10);
+        assertTrue(first.await(2, TimeUnit.SECONDS));
+
+        // The timer thread exits while the timer is idle, and is started by the next timeout
+        Thread.sleep(50);
+        CountDownLatch second = new CountDownLatch(1);
+        timer.newTimeout(second::countDown, 10);
+        assertTrue(second.await(2, TimeUnit.SECONDS));
+        assertEquals(0, timer.pendingTimeouts());
+    }
+}
@@ -326,6 +326,32 @@ public class ReflectionTest extends TestCase {
         }.getClass(), I.class, 0));
     }
 
+    /**
+     * Cached results are the same as resolving the types again, also for a class which is looked
+     * up with different bases.
+     */
+    public void testCachedGenericClass() {
+        Class<?>[][] pairs = {
+                {B1.class, A.class}, {D1.class, A.class}, {D1.class, C.class}, {BB.class, AA.class},
+                {BI1.class, I.class}, {CIG2.class, AI.class}, {CIG2.class, I.class},
+                {Item1ToItem2.class, A.class}, {Item1ToItem2.class, StrangeExtend.class},
+                {BAIII.class, II.class}, {BAIII.class, I.class}, {BAIII.class, __I.class},
+                {SwapOrder1.class, AA.class}, {Item1.class, A.class},
+        };
+        for (int round = 0; round < 2; round++) {
+            for (Class<?>[] pair : pairs) {
+                Type[] resolved = Reflection.genericTypeResolver(pair[0], pair[1]);
+                for (int i = 0; i < 3; i++) {
+                    Type expected = (i < resolved.length && resolved[i] instanceof Class<?>) ? resolved[i] : null;
+                    assertEquals(pair[0] + " " + pair[1] + " " + i, expected,
+                            Reflection.getGenericClass(pair[0], pair[1], i));
+                }
+            }
+        }
+        assertEquals(Item1.class, Reflection.getGenericClass(Item1ToItem2.class, A.class, 0));
+        assertEquals(Item2.class, Reflection.getGenericClass(Item1ToItem2.class, StrangeExtend.class, 0));
+    }
+
     public void testResolveGenericCollections() {
         List<Item1> itemList = new ArrayList<Item1>() {
             private static final long serialVersionUID = 1L;
@@ -0,0 +1,64 @@
+package uk.org.ngo.squeezer.util;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StringPoolTest extends TestCase {
+
+    public void testIntern() {
+        StringPool pool = new StringPool(16);
+        String artist = new String("Artist");
+        assertSame(artist, pool.intern(artist));
+        assertSame(artist, pool.intern(new String("Artist")));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0.5, pool.getHitRate(), 0.001);
+    }
+
+    public void testBounded() {
+        StringPool pool = new StringPool(4);
+        for (int i = 0; i < 100; i++) {
+            String s = "Album " + i;
+            assertEquals(s, pool.intern(s));
+        }
+        assertEquals(0, pool.getHits());
+        assertEquals(100, pool.getMisses());
+    }
+
+    public void testLongStringsAreNotPooled() {
+        StringPool pool = new StringPool(16);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append('x');
+        }
+        String s = sb.toString();
+        pool.intern(s);
+        assertNotSame(s, pool.intern(new String(s)));
+        assertEquals(0, pool.getHits() + pool.getMisses());
+    }
+
+    public void testInternValues() {
+        StringPool pool = new StringPool(64);
+        String album = new String("Album");
+        pool.intern(album);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("album", new String("Album"));
+        params.put("album_id", 10L);
+        Map<String, Object> record = new HashMap<>();
+        record.put("text", new String("Album"));
+        record.put("params", params);
+        record.put("choices", new Object[]{new String("Album"), 1});
+
+        pool.internValues(record);
+
+        assertSame(album, record.get("text"));
+        assertSame(album, params.get("album"));
+        assertEquals(10L, params.get("album_id"));
+        assertSame(album, ((Object[]) record.get("choices"))[0]);
+        assertEquals(3, pool.getHits());
+    }
+}